@@ -0,0 +1,18 @@
+#!/bin/sh
+# Compiles the editor into build/ryak.jar and records an AppCDS archive,
+# build/ryak.jsa, from a training run that starts the editor, parses the
+# sample program in it and exits. The training run opens a window, so it
+# needs a display. Launch with:
+#
+#   java --enable-preview -XX:SharedArchiveFile=build/ryak.jsa -jar build/ryak.jar
+set -e
+
+cd "$(dirname "$0")/.."
+rm -rf build/classes
+mkdir -p build/classes
+
+javac --release 21 --enable-preview -Xlint:-preview -d build/classes src/*.java
+cp src/sampleCode build/classes/
+jar --create --file build/ryak.jar --main-class Main -C build/classes .
+
+java --enable-preview -XX:ArchiveClassesAtExit=build/ryak.jsa -jar build/ryak.jar --warmup-ui
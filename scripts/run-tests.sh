@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compiles the sources and the tests under test/ into build/test-classes and
+# runs every *Test class, stopping at the first one that fails. Needs JDK 21;
+# set JAVA_HOME if it is not the JDK on the PATH.
+set -e
+
+cd "$(dirname "$0")/.."
+BIN=${JAVA_HOME:+$JAVA_HOME/bin/}
+rm -rf build/test-classes
+mkdir -p build/test-classes
+
+"${BIN}javac" --release 21 --enable-preview -Xlint:-preview -d build/test-classes src/*.java test/*.java
+cp src/sampleCode build/test-classes/
+
+for test in test/*Test.java; do
+    name=$(basename "$test" .java)
+    echo "== $name"
+    "${BIN}java" --enable-preview -cp build/test-classes "$name"
+done
@@ -5,25 +5,25 @@ public class AST {
     private final String type;
     private final List<AST> children;
     private String value;
-//    private final int line;
-//    private final int column;
+    private final int start;
+    private final int end;
 
     private final Main main;
 
-    public AST(String type, int line, int column, Main main) {
+    public AST(String type, int start, int end, Main main) {
         this.type = type;
         this.children = new ArrayList<>();
-//        this.line = line;
-//        this.column = column;
+        this.start = start;
+        this.end = end;
         this.main = main;
     }
 
-    public AST(String type, String value, int line, int column, Main main) {
+    public AST(String type, String value, int start, int end, Main main) {
         this.type = type;
         this.value = value;
         this.children = new ArrayList<>();
-//        this.line = line;
-//        this.column = column;
+        this.start = start;
+        this.end = end;
         this.main = main;
     }
 
@@ -31,18 +31,28 @@ public class AST {
         children.add(child);
     }
 
-    public void printTree(int indent) {
-        String indentStr = "  ".repeat(indent);
+    public String getType() {
+        return type;
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(indentStr);
-        sb.append(type);
+    public String getValue() {
+        return value;
+    }
 
-        if (value != null) {
-            sb.append(" (").append(value).append(")");
-        }
+    public List<AST> getChildren() {
+        return children;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
 
-        String output = sb.toString();
+    public void printTree(int indent) {
+        String output = formatLine(indent);
         System.out.println(output);
 
         if (main != null) {
@@ -53,4 +63,18 @@ public class AST {
             child.printTree(indent + 1);
         }
     }
+
+    String formatLine(int indent) {
+        String indentStr = "  ".repeat(indent);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(indentStr);
+        sb.append(type);
+
+        if (value != null) {
+            sb.append(" (").append(value).append(")");
+        }
+
+        return sb.toString();
+    }
 }
\ No newline at end of file
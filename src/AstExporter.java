@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a parse tree to a channel as compact binary or as JSON. Output goes
+ * through one fixed-size buffer and the tree is walked with an explicit
+ * stack, so memory depends on the depth of the tree and never on its size,
+ * and no per-node strings are built.
+ *
+ * <p>The binary format is the magic bytes {@code RYAK}, a version byte, then
+ * the nodes in pre-order. Each node is a sequence of unsigned LEB128
+ * varints:
+ * <ol>
+ *   <li>kind: an index into the kind table. The first time a kind appears its
+ *       index equals the table size and is followed by the kind name as a
+ *       varint length and UTF-8 bytes.</li>
+ *   <li>start: zigzag-encoded difference from the previous node's start.</li>
+ *   <li>length: end minus start.</li>
+ *   <li>value: 0 for none, 1 when the value is exactly the source text of the
+ *       node's span, or 2 followed by a varint length and UTF-8 bytes.</li>
+ *   <li>child count, after which the children follow.</li>
+ * </ol>
+ */
+public class AstExporter {
+    private static final byte[] MAGIC = {'R', 'Y', 'A', 'K'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int VALUE_NONE = 0;
+    private static final int VALUE_SOURCE_SPAN = 1;
+    private static final int VALUE_INLINE = 2;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private AST[] nodeStack = new AST[64];
+    private int[] childStack = new int[64];
+    private int[] writtenStack = new int[64];
+    private int depth = 0;
+
+    private AstExporter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static void writeBinary(AST root, CharSequence source, OutputStream out) throws IOException {
+        writeBinary(root, source, Channels.newChannel(out));
+        out.flush();
+    }
+
+    /**
+     * Writes the tree in the binary format. {@code source} is the text the
+     * tree was parsed from, or {@code null} to always inline values.
+     */
+    public static void writeBinary(AST root, CharSequence source, WritableByteChannel channel) throws IOException {
+        new AstExporter(channel).binary(root, source);
+    }
+
+    public static void writeJson(AST root, OutputStream out) throws IOException {
+        writeJson(root, Channels.newChannel(out));
+        out.flush();
+    }
+
+    /**
+     * Writes the tree as nested JSON objects with {@code type}, {@code start},
+     * {@code end}, an optional {@code value} and a {@code children} array.
+     */
+    public static void writeJson(AST root, WritableByteChannel channel) throws IOException {
+        new AstExporter(channel).json(root);
+    }
+
+    private void binary(AST root, CharSequence source) throws IOException {
+        Map<String, Integer> kinds = new HashMap<>();
+        int previousStart = 0;
+
+        ensure(MAGIC.length + 1);
+        buffer.put(MAGIC);
+        buffer.put(FORMAT_VERSION);
+
+        push(root);
+        while (depth > 0) {
+            AST node = nodeStack[depth - 1];
+            int next = childStack[depth - 1];
+
+            if (next == 0) {
+                Integer kind = kinds.get(node.getType());
+                if (kind == null) {
+                    kind = kinds.size();
+                    kinds.put(node.getType(), kind);
+                    writeVarint(kind);
+                    writeVarint(utf8Length(node.getType()));
+                    writeUtf8(node.getType());
+                } else {
+                    writeVarint(kind);
+                }
+
+                writeVarint(zigzag(node.getStart() - previousStart));
+                writeVarint(Math.max(0, node.getEnd() - node.getStart()));
+                previousStart = node.getStart();
+
+                String value = node.getValue();
+                if (value == null) {
+                    writeVarint(VALUE_NONE);
+                } else if (matchesSource(value, source, node.getStart(), node.getEnd())) {
+                    writeVarint(VALUE_SOURCE_SPAN);
+                } else {
+                    writeVarint(VALUE_INLINE);
+                    writeVarint(utf8Length(value));
+                    writeUtf8(value);
+                }
+
+                writeVarint(countChildren(node));
+            }
+
+            if (!advance(node, next)) {
+                depth--;
+            }
+        }
+
+        flush();
+    }
+
+    private void json(AST root) throws IOException {
+        push(root);
+        while (depth > 0) {
+            AST node = nodeStack[depth - 1];
+            int next = childStack[depth - 1];
+
+            if (next == 0) {
+                writeAscii("{\"type\":");
+                writeJsonString(node.getType());
+                writeAscii(",\"start\":");
+                writeDecimal(node.getStart());
+                writeAscii(",\"end\":");
+                writeDecimal(node.getEnd());
+                if (node.getValue() != null) {
+                    writeAscii(",\"value\":");
+                    writeJsonString(node.getValue());
+                }
+                writeAscii(",\"children\":[");
+            }
+
+            int written = writtenStack[depth - 1];
+            if (!advance(node, next)) {
+                writeAscii("]}");
+                depth--;
+            } else if (written > 0) {
+                // The child is pushed but not yet written, so the comma still lands before it.
+                writeAscii(",");
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Pushes the next non-null child of {@code node} at or after
+     * {@code next}, returning false once there are none left.
+     */
+    private boolean advance(AST node, int next) {
+        List<AST> children = node.getChildren();
+        while (next < children.size() && children.get(next) == null) {
+            next++;
+        }
+        if (next >= children.size()) {
+            return false;
+        }
+
+        childStack[depth - 1] = next + 1;
+        writtenStack[depth - 1]++;
+        push(children.get(next));
+        return true;
+    }
+
+    private void push(AST node) {
+        if (depth == nodeStack.length) {
+            nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+            childStack = Arrays.copyOf(childStack, depth * 2);
+            writtenStack = Arrays.copyOf(writtenStack, depth * 2);
+        }
+        nodeStack[depth] = node;
+        childStack[depth] = 0;
+        writtenStack[depth] = 0;
+        depth++;
+    }
+
+    private static int countChildren(AST node) {
+        int count = 0;
+        for (AST child : node.getChildren()) {
+            if (child != null) count++;
+        }
+        return count;
+    }
+
+    private static boolean matchesSource(String value, CharSequence source, int start, int end) {
+        if (source == null || start < 0 || end > source.length() || end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (source.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            ensure(1);
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void writeDecimal(int value) throws IOException {
+        ensure(11);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + remaining / divisor % 10));
+        }
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        ensure(6);
+        buffer.put((byte) '\\');
+        buffer.put((byte) 'u');
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            buffer.put(HEX_DIGITS[(c >> shift) & 0xF]);
+        }
+    }
+
+    private void writeJsonString(String text) throws IOException {
+        ensure(1);
+        buffer.put((byte) '"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> writeAscii("\\\"");
+                case '\\' -> writeAscii("\\\\");
+                case '\n' -> writeAscii("\\n");
+                case '\r' -> writeAscii("\\r");
+                case '\t' -> writeAscii("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writeUnicodeEscape(c);
+                    } else {
+                        i = writeUtf8Char(text, i);
+                    }
+                }
+            }
+        }
+        ensure(1);
+        buffer.put((byte) '"');
+    }
+
+    private void writeUtf8(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            i = writeUtf8Char(text, i);
+        }
+    }
+
+    /**
+     * Encodes the character at {@code i}, consuming a surrogate pair if one
+     * starts there, and returns the index of the last character used.
+     */
+    private int writeUtf8Char(String text, int i) throws IOException {
+        ensure(4);
+        char c = text.charAt(i);
+
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            return i + 1;
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return i;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("--json") || args[0].equals("--binary"))) {
+            System.err.println("Usage: AstExporter --json|--binary <file>");
+            return;
+        }
+
+        String text = Files.readString(Path.of(args[1]));
+
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+
+        if (args[0].equals("--json")) {
+            writeJson(parser.getRootNode(), System.out);
+        } else {
+            writeBinary(parser.getRootNode(), text, System.out);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded undo/redo history of parse-tree snapshots. Each recorded tree
+ * shares unchanged subtrees with the current snapshot, and once more than
+ * {@code capacity} versions are kept the oldest are forgotten.
+ */
+public class AstHistory {
+    private final int capacity;
+    private final Deque<AstSnapshot> undoStack = new ArrayDeque<>();
+    private final Deque<AstSnapshot> redoStack = new ArrayDeque<>();
+    private AstSnapshot current;
+
+    public AstHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(STR."Capacity must be positive: \{capacity}");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a newly parsed tree and returns its snapshot. If the tree is
+     * unchanged the current snapshot is returned and nothing is recorded.
+     * Recording discards any versions that could have been redone.
+     */
+    public AstSnapshot record(AST tree) {
+        AstSnapshot snapshot = AstSnapshot.of(tree, current);
+        if (snapshot.sameTree(current)) {
+            return current;
+        }
+
+        if (current != null) {
+            pushUndo(current);
+        }
+        redoStack.clear();
+        current = snapshot;
+        return current;
+    }
+
+    public AstSnapshot current() {
+        return current;
+    }
+
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    public AstSnapshot undo() {
+        if (undoStack.isEmpty()) {
+            return current;
+        }
+        redoStack.addFirst(current);
+        current = undoStack.removeLast();
+        return current;
+    }
+
+    public AstSnapshot redo() {
+        if (redoStack.isEmpty()) {
+            return current;
+        }
+        pushUndo(current);
+        current = redoStack.removeFirst();
+        return current;
+    }
+
+    // Keeps the undo stack to capacity - 1 versions, so with the current one at most capacity are held.
+    private void pushUndo(AstSnapshot snapshot) {
+        undoStack.addLast(snapshot);
+        while (undoStack.size() >= capacity) {
+            undoStack.removeFirst();
+        }
+    }
+
+    /**
+     * Number of versions held, including the current one.
+     */
+    public int size() {
+        return undoStack.size() + redoStack.size() + (current == null ? 0 : 1);
+    }
+}
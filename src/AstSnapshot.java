@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable version of a parse tree. {@link #of(AST, AstSnapshot)} builds
+ * the next version from a fresh parse, reusing every node of the previous
+ * snapshot whose content and relative position are unchanged, so keeping
+ * many versions costs memory in proportion to what the edits changed.
+ *
+ * <p>Finding those nodes uses an index of every node built since the
+ * index was last compacted, which each snapshot passes on to the next, so
+ * building a version costs time in proportion to the new tree rather than
+ * the new tree plus the old one. Like {@link AstHistory}, snapshots of one
+ * lineage are built from a single thread.
+ *
+ * <p>Two snapshots hold the same tree exactly when their roots are the same
+ * object; see {@link #sameTree}.
+ */
+public final class AstSnapshot {
+    // Lists longer than this are split into chunks.
+    private static final int MAX_DIRECT_CHILDREN = 32;
+    // A child ends a chunk when these bits of its mixed hash are zero, giving chunks of about 16.
+    private static final int CHUNK_BOUNDARY_MASK = 15;
+    // The index is compacted once it holds more than twice the current tree plus this many nodes.
+    private static final int MIN_INDEX_SLACK = 1024;
+
+    private final int version;
+    private final int rootStart;
+    private final SyntaxNode root;
+    private final Index index;
+
+    private AstSnapshot(int version, int rootStart, SyntaxNode root, Index index) {
+        this.version = version;
+        this.rootStart = rootStart;
+        this.root = root;
+        this.index = index;
+    }
+
+    /**
+     * Snapshots {@code tree}, sharing structure with {@code previous} where
+     * possible. {@code previous} may be {@code null}. Children left missing
+     * by parse errors are dropped.
+     */
+    public static AstSnapshot of(AST tree, AstSnapshot previous) {
+        Index index = previous == null ? new Index() : previous.index;
+        if (previous != null && !index.contains(previous.root)) {
+            // An older version brought back by undo, whose nodes were compacted out since.
+            index.add(previous.root);
+        }
+
+        SyntaxNode root = new Builder(index).build(tree);
+        index.compact(root);
+        return new AstSnapshot(previous == null ? 0 : previous.version + 1, tree.getStart(), root, index);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public SyntaxNode getRoot() {
+        return root;
+    }
+
+    public boolean sameTree(AstSnapshot other) {
+        return other != null && root == other.root;
+    }
+
+    public AST toAst(Main main) {
+        return root.toAst(rootStart, main);
+    }
+
+    /**
+     * Every node and child array built since the last compaction, by
+     * content, so a later build can reuse them. Shared by a lineage of
+     * snapshots and only ever grows between compactions.
+     */
+    private static final class Index {
+        private final Map<NodeKey, SyntaxNode> nodes = new HashMap<>();
+        private final Map<List<SyntaxNode>, SyntaxNode[]> arrays = new HashMap<>();
+
+        boolean contains(SyntaxNode node) {
+            return nodes.get(NodeKey.of(node)) == node;
+        }
+
+        void add(SyntaxNode node) {
+            List<SyntaxNode> pending = new ArrayList<>();
+            pending.add(node);
+            while (!pending.isEmpty()) {
+                SyntaxNode current = pending.removeLast();
+                SyntaxNode[] children = current.getRawChildren();
+                if (nodes.putIfAbsent(NodeKey.of(current), current) == null) {
+                    arrays.putIfAbsent(List.of(children), children);
+                    pending.addAll(List.of(children));
+                }
+            }
+        }
+
+        /**
+         * Drops the nodes of older versions once they outnumber the current
+         * tree, so the rebuild is paid for by the builds that grew the index.
+         */
+        void compact(SyntaxNode root) {
+            if (nodes.size() > 2 * root.getTreeSize() + MIN_INDEX_SLACK) {
+                nodes.clear();
+                arrays.clear();
+                add(root);
+            }
+        }
+    }
+
+    private static final class Builder {
+        private final Map<NodeKey, SyntaxNode> nodes;
+        private final Map<List<SyntaxNode>, SyntaxNode[]> arrays;
+
+        Builder(Index index) {
+            this.nodes = index.nodes;
+            this.arrays = index.arrays;
+        }
+
+        SyntaxNode build(AST tree) {
+            return prepare(tree).toNode(0, this);
+        }
+
+        /**
+         * Builds everything about a node except its start delta, which
+         * depends on the chunk it lands in.
+         */
+        private Pending prepare(AST ast) {
+            List<Pending> children = new ArrayList<>();
+            for (AST child : ast.getChildren()) {
+                if (child != null) {
+                    children.add(prepare(child));
+                }
+            }
+
+            SyntaxNode[] array = arrange(children, ast.getStart(), 0);
+            int length = ast.getEnd() - ast.getStart();
+
+            int hash = ast.getType().hashCode();
+            hash = 31 * hash + (ast.getValue() == null ? 0 : ast.getValue().hashCode());
+            hash = 31 * hash + length;
+            hash = 31 * hash + arrayHash(array);
+            return new Pending(ast.getType(), ast.getValue(), ast.getStart(), length, array, null, hash);
+        }
+
+        /**
+         * Turns a child list into a node array, grouping it into chunks
+         * (and chunks of chunks) while it is too long.
+         */
+        private SyntaxNode[] arrange(List<Pending> items, int parentStart, int level) {
+            if (items.size() <= MAX_DIRECT_CHILDREN) {
+                SyntaxNode[] array = new SyntaxNode[items.size()];
+                int previousStart = parentStart;
+                for (int i = 0; i < array.length; i++) {
+                    Pending item = items.get(i);
+                    array[i] = item.toNode(item.start - previousStart, this);
+                    previousStart = item.start;
+                }
+                return intern(array);
+            }
+
+            List<Pending> chunks = new ArrayList<>();
+            List<Pending> members = new ArrayList<>();
+            for (Pending item : items) {
+                members.add(item);
+                if (isBoundary(item.hash, level) || members.size() == MAX_DIRECT_CHILDREN) {
+                    chunks.add(chunk(members));
+                    members = new ArrayList<>();
+                }
+            }
+            if (!members.isEmpty()) {
+                chunks.add(chunk(members));
+            }
+
+            return arrange(chunks, parentStart, level + 1);
+        }
+
+        private Pending chunk(List<Pending> members) {
+            int hash = 1;
+            for (Pending member : members) {
+                hash = 31 * hash + member.hash;
+            }
+            return new Pending(null, null, members.getFirst().start, 0, null, members, hash);
+        }
+
+        private static boolean isBoundary(int hash, int level) {
+            int mixed = (hash + level) * 0x9E3779B9;
+            mixed ^= mixed >>> 16;
+            return (mixed & CHUNK_BOUNDARY_MASK) == 0;
+        }
+
+        private static int arrayHash(SyntaxNode[] array) {
+            int hash = 1;
+            for (SyntaxNode node : array) {
+                hash = 31 * hash + node.getContentHash() * 17 + node.getStartDelta();
+            }
+            return hash;
+        }
+
+        private SyntaxNode[] intern(SyntaxNode[] array) {
+            SyntaxNode[] existing = arrays.putIfAbsent(List.of(array), array);
+            return existing != null ? existing : array;
+        }
+
+        private SyntaxNode intern(String type, String value, int startDelta, int length,
+                                  SyntaxNode[] children, int hash) {
+            NodeKey key = new NodeKey(type, value, startDelta, length, children);
+            SyntaxNode existing = nodes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            SyntaxNode node = new SyntaxNode(type, value, startDelta, length, children, hash);
+            nodes.put(key, node);
+            return node;
+        }
+    }
+
+    /**
+     * A node or chunk whose absolute start is known but whose start delta is
+     * not yet.
+     */
+    private record Pending(String type, String value, int start, int length,
+                           SyntaxNode[] children, List<Pending> members, int hash) {
+        SyntaxNode toNode(int startDelta, Builder builder) {
+            SyntaxNode[] array = members == null ? children : builder.arrange(members, start, 0);
+            return builder.intern(type, value, startDelta, length, array, hash);
+        }
+    }
+
+    // Children are compared by array identity; arrays are interned by their elements' identities.
+    private record NodeKey(String type, String value, int startDelta, int length, SyntaxNode[] children) {
+        static NodeKey of(SyntaxNode node) {
+            return new NodeKey(node.getType(), node.getValue(), node.getStartDelta(), node.getLength(),
+                    node.getRawChildren());
+        }
+    }
+}
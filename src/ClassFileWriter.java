@@ -0,0 +1,346 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of the JVM class file format to write one class with static
+ * fields and static methods. Stack map frames are only written where the
+ * caller binds a {@link Label} with {@link Code#bind(Label, List, List)}, as
+ * full frames, which is all straight-line code with structured branches
+ * needs.
+ *
+ * <p>This is written by hand rather than with {@code java.lang.classfile},
+ * which is not in JDK 21, the only release the project builds on.
+ *
+ * <p>Verification types are written as descriptors: {@code "I"} and
+ * {@code "J"} for int and long, anything else is an object type given by its
+ * internal name or array descriptor.
+ */
+public class ClassFileWriter {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    // Java 8, the oldest version the verifier checks with stack map frames only.
+    private static final int CLASS_VERSION = 52;
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final String className;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(memberBytes);
+    private int fieldCount = 0;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassFileWriter(String className) {
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        try {
+            fields.writeShort(access);
+            fields.writeShort(utf8(name));
+            fields.writeShort(utf8(descriptor));
+            fields.writeShort(0);
+            fieldCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Code addMethod(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+
+    public byte[] toByteArray() {
+        try {
+            int thisClass = classRef(className);
+            int superClass = classRef("java/lang/Object");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fieldCount);
+            memberBytes.writeTo(out);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int utf8(String value) {
+        return constant(STR."U\{value}", out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        }, 1);
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant(STR."C\{internalName}", out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(name);
+        }, 1);
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return constant(STR."S\{value}", out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(utf8);
+        }, 1);
+    }
+
+    int integer(int value) {
+        return constant(STR."I\{value}", out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        }, 1);
+    }
+
+    int longConstant(long value) {
+        return constant(STR."J\{value}", out -> {
+            out.writeByte(CONSTANT_LONG);
+            out.writeLong(value);
+        }, 2);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant(STR."N\{name}:\{descriptor}", out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return constant(STR."\{tag}\{owner}.\{name}:\{descriptor}", out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int constant(String key, PoolEntry entry, int slots) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (poolCount + slots > 65535) {
+            throw new IllegalStateException("Too many constants for one class file");
+        }
+
+        try {
+            entry.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int index = poolCount;
+        poolCount += slots;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static final class Label {
+        private int position = -1;
+        private final List<Integer> branchSites = new ArrayList<>();
+    }
+
+    private record Frame(int position, List<String> locals, List<String> stack) {
+    }
+
+    /**
+     * The body of one method. Instructions are appended in order; call
+     * {@link #finish(int, int)} once at the end.
+     */
+    public final class Code {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private final List<Frame> frames = new ArrayList<>();
+
+        private Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public int position() {
+            return code.size();
+        }
+
+        public void op(int opcode) {
+            code.write(opcode);
+        }
+
+        public void opByte(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        public void opShort(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+        }
+
+        /**
+         * Emits a local variable instruction, using {@code wide} when the
+         * index does not fit in a byte.
+         */
+        public void local(int opcode, int index) {
+            if (index <= 255) {
+                opByte(opcode, index);
+            } else {
+                code.write(Opcodes.WIDE);
+                opShort(opcode, index);
+            }
+        }
+
+        public void branch(int opcode, Label target) {
+            target.branchSites.add(code.size());
+            labels.add(target);
+            opShort(opcode, 0);
+        }
+
+        /**
+         * Places {@code label} at the current position and records the
+         * frame that holds there on every path reaching it.
+         */
+        public void bind(Label label, List<String> locals, List<String> stack) {
+            label.position = code.size();
+            labels.add(label);
+            if (!frames.isEmpty() && frames.getLast().position() == label.position) {
+                frames.removeLast();
+            }
+            frames.add(new Frame(label.position, List.copyOf(locals), List.copyOf(stack)));
+        }
+
+        public void finish(int maxStack, int maxLocals) {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException(STR."Method \{name} is \{bytes.length} bytes, over the JVM limit of \{MAX_CODE_LENGTH}");
+            }
+
+            for (Label label : labels) {
+                for (int site : label.branchSites) {
+                    int offset = label.position - site;
+                    if (offset != (short) offset) {
+                        throw new IllegalStateException(STR."Branch in \{name} is too far to encode");
+                    }
+                    bytes[site + 1] = (byte) (offset >> 8);
+                    bytes[site + 2] = (byte) offset;
+                }
+                label.branchSites.clear();
+            }
+
+            try {
+                ByteArrayOutputStream stackMap = new ByteArrayOutputStream();
+                DataOutputStream frameOut = new DataOutputStream(stackMap);
+                frameOut.writeShort(frames.size());
+                int previous = -1;
+                for (Frame frame : frames) {
+                    frameOut.writeByte(255);
+                    frameOut.writeShort(frame.position() - previous - 1);
+                    writeTypes(frameOut, frame.locals());
+                    writeTypes(frameOut, frame.stack());
+                    previous = frame.position();
+                }
+
+                ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+                DataOutputStream codeOut = new DataOutputStream(attribute);
+                codeOut.writeShort(maxStack);
+                codeOut.writeShort(maxLocals);
+                codeOut.writeInt(bytes.length);
+                codeOut.write(bytes);
+                codeOut.writeShort(0);
+                if (frames.isEmpty()) {
+                    codeOut.writeShort(0);
+                } else {
+                    codeOut.writeShort(1);
+                    codeOut.writeShort(utf8("StackMapTable"));
+                    codeOut.writeInt(stackMap.size());
+                    stackMap.writeTo(codeOut);
+                }
+
+                ByteArrayOutputStream method = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(method);
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(attribute.size());
+                attribute.writeTo(out);
+                methods.add(method.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeTypes(DataOutputStream out, List<String> types) throws IOException {
+            out.writeShort(types.size());
+            for (String type : types) {
+                switch (type) {
+                    case "I" -> out.writeByte(1);
+                    case "J" -> out.writeByte(4);
+                    default -> {
+                        out.writeByte(7);
+                        out.writeShort(classRef(type));
+                    }
+                }
+            }
+        }
+    }
+}
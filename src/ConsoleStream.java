@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The {@link PrintStream} a program writes to when run from the editor.
+ * Complete lines go to an {@link OutputRing} for the console, and when a
+ * spill file is given every line is also written there, so output that has
+ * scrolled out of the console is still kept. All writes happen on the thread
+ * running the program.
+ */
+public class ConsoleStream extends PrintStream {
+    private final OutputRing ring;
+    private final Writer spill;
+    private final StringBuilder partialLine = new StringBuilder();
+
+    public ConsoleStream(OutputRing ring, Path spillFile) throws IOException {
+        super(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        this.ring = ring;
+        this.spill = spillFile != null ? Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void println(long x) {
+        println(Long.toString(x));
+    }
+
+    @Override
+    public void println(Object x) {
+        println(String.valueOf(x));
+    }
+
+    @Override
+    public void println() {
+        println("");
+    }
+
+    @Override
+    public void println(String line) {
+        if (!partialLine.isEmpty()) {
+            line = partialLine.append(line).toString();
+            partialLine.setLength(0);
+        }
+        emit(line);
+    }
+
+    @Override
+    public void print(String text) {
+        int lineStart = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', lineStart)) >= 0) {
+            println(text.substring(lineStart, newline));
+            lineStart = newline + 1;
+        }
+        partialLine.append(text, lineStart, text.length());
+    }
+
+    @Override
+    public void print(long x) {
+        partialLine.append(x);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        print(new String(buffer, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    private void emit(String line) {
+        ring.put(line);
+        if (spill != null) {
+            try {
+                spill.write(line);
+                spill.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (spill != null) {
+            try {
+                spill.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Emits any unterminated last line, closes the spill file and tells the
+     * console that no more output is coming.
+     */
+    @Override
+    public void close() {
+        try {
+            if (!partialLine.isEmpty()) {
+                emit(partialLine.toString());
+                partialLine.setLength(0);
+            }
+            if (spill != null) {
+                spill.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            ring.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Shows program output. Lines are kept in a fixed-size circular scrollback
+ * and only the rows inside the visible area are painted, so the cost of a
+ * frame does not depend on how much has been printed. While a program runs,
+ * a timer drains its {@link OutputRing} once per frame.
+ */
+public class ConsoleView extends JComponent implements Scrollable {
+    private static final long serialVersionUID = 1L;
+    private static final int FRAME_MILLIS = 16;
+    private static final int MAX_LINES_PER_FRAME = 1 << 20;
+    private static final int PADDING = 4;
+
+    // Created by the first attach, so nothing holds the view before it is fully built.
+    private Timer frameTimer;
+    private String[] lines;
+    private int firstLine = 0;
+    private int lineCount = 0;
+    private int longestLine = 0;
+    // Set when the longest line may have left the scrollback; the next layout measures again.
+    private boolean longestLineStale = false;
+    private transient OutputRing ring;
+    private transient Runnable onFinished;
+
+    private ConsoleView(int scrollbackLimit) {
+        lines = new String[checkScrollbackLimit(scrollbackLimit)];
+    }
+
+    /**
+     * Creates an empty console that keeps the last {@code scrollbackLimit}
+     * lines.
+     */
+    public static ConsoleView create(int scrollbackLimit) {
+        ConsoleView view = new ConsoleView(scrollbackLimit);
+        view.setFont(new Font("Monospaced", Font.PLAIN, 16));
+        view.setOpaque(true);
+        view.setBackground(new Color(25, 25, 25));
+        view.setForeground(new Color(220, 220, 220));
+        return view;
+    }
+
+    /**
+     * Changes how many lines are kept, dropping the oldest if there are now
+     * too many.
+     */
+    public void setScrollbackLimit(int scrollbackLimit) {
+        String[] resized = new String[checkScrollbackLimit(scrollbackLimit)];
+        int kept = Math.min(lineCount, scrollbackLimit);
+        for (int i = 0; i < kept; i++) {
+            resized[i] = lineAt(lineCount - kept + i);
+        }
+        lines = resized;
+        firstLine = 0;
+        lineCount = kept;
+        longestLineStale = true;
+        contentChanged(false);
+    }
+
+    private static int checkScrollbackLimit(int scrollbackLimit) {
+        if (scrollbackLimit < 1) {
+            throw new IllegalArgumentException(STR."Scrollback limit must be positive: \{scrollbackLimit}");
+        }
+        return scrollbackLimit;
+    }
+
+    public int getScrollbackLimit() {
+        return lines.length;
+    }
+
+    /**
+     * Starts showing output from {@code ring}, replacing whatever the console
+     * held. {@code onFinished} runs on the event thread once the ring is
+     * closed and empty.
+     */
+    public void attach(OutputRing ring, Runnable onFinished) {
+        clear();
+        this.ring = ring;
+        this.onFinished = onFinished;
+        if (frameTimer == null) {
+            frameTimer = new Timer(FRAME_MILLIS, e -> drainFrame());
+        }
+        frameTimer.start();
+    }
+
+    public void clear() {
+        Arrays.fill(lines, null);
+        firstLine = 0;
+        lineCount = 0;
+        longestLine = 0;
+        longestLineStale = false;
+        contentChanged(false);
+    }
+
+    public void append(String line) {
+        if (lineCount < lines.length) {
+            lines[(firstLine + lineCount) % lines.length] = line;
+            lineCount++;
+        } else {
+            if (lines[firstLine].length() >= longestLine) {
+                longestLineStale = true;
+            }
+            lines[firstLine] = line;
+            firstLine = (firstLine + 1) % lines.length;
+        }
+        longestLine = Math.max(longestLine, line.length());
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public String lineAt(int index) {
+        return lines[(firstLine + index) % lines.length];
+    }
+
+    private void drainFrame() {
+        if (ring == null) {
+            frameTimer.stop();
+            return;
+        }
+
+        boolean following = isFollowing();
+        if (ring.drain(this::append, MAX_LINES_PER_FRAME) > 0) {
+            contentChanged(following);
+        }
+
+        if (ring.isFinished()) {
+            ring = null;
+            frameTimer.stop();
+            if (onFinished != null) {
+                onFinished.run();
+            }
+        }
+    }
+
+    /**
+     * The length of the longest line still held, measured again only after
+     * the previous longest may have been dropped, so at most once a layout
+     * however many lines were evicted.
+     */
+    private int longestLine() {
+        if (longestLineStale) {
+            longestLine = 0;
+            for (int i = 0; i < lineCount; i++) {
+                longestLine = Math.max(longestLine, lineAt(i).length());
+            }
+            longestLineStale = false;
+        }
+        return longestLine;
+    }
+
+    private boolean isFollowing() {
+        Rectangle visible = getVisibleRect();
+        return visible.y + visible.height >= getHeight() - lineHeight();
+    }
+
+    private void contentChanged(boolean scrollToEnd) {
+        revalidate();
+        repaint();
+        if (scrollToEnd) {
+            SwingUtilities.invokeLater(() -> scrollRectToVisible(new Rectangle(0, getHeight() - 1, 1, 1)));
+        }
+    }
+
+    private int lineHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        return new Dimension(longestLine() * metrics.charWidth('m') + 2 * PADDING,
+                lineCount * metrics.getHeight() + 2 * PADDING);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        FontMetrics metrics = g.getFontMetrics(getFont());
+        int height = metrics.getHeight();
+        int first = Math.max(0, (clip.y - PADDING) / height);
+        int last = Math.min(lineCount - 1, (clip.y + clip.height - PADDING) / height);
+
+        g.setFont(getFont());
+        g.setColor(getForeground());
+        for (int i = first; i <= last; i++) {
+            g.drawString(lineAt(i), PADDING, PADDING + i * height + metrics.getAscent());
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight() : getFontMetrics(getFont()).charWidth('m');
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport viewport && viewport.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport viewport && viewport.getHeight() > getPreferredSize().height;
+    }
+}
@@ -0,0 +1,113 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only {@link CharSequence} over a Swing {@link Document}'s own
+ * storage. The text is fetched with partial-return {@link Segment}s, which
+ * hand back the arrays either side of the gap buffer instead of a copy.
+ *
+ * <p>The view aliases the live buffer, so it is only valid while the caller
+ * holds the document's read lock and must not be kept after releasing it.
+ */
+public class DocumentText implements CharSequence {
+    private final char[][] chunkArrays;
+    private final int[] chunkOffsets;
+    private final int[] chunkStarts;
+    private final int length;
+    private int currentChunk = 0;
+
+    private DocumentText(List<Segment> segments, int length) {
+        this.chunkArrays = new char[segments.size()][];
+        this.chunkOffsets = new int[segments.size()];
+        this.chunkStarts = new int[segments.size() + 1];
+        this.length = length;
+
+        int start = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            chunkArrays[i] = segment.array;
+            chunkOffsets[i] = segment.offset;
+            chunkStarts[i] = start;
+            start += segment.count;
+        }
+        chunkStarts[segments.size()] = start;
+    }
+
+    public static DocumentText of(Document document) throws BadLocationException {
+        int length = document.getLength();
+        List<Segment> segments = new ArrayList<>(2);
+
+        int offset = 0;
+        while (offset < length) {
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            document.getText(offset, length - offset, segment);
+            segments.add(segment);
+            offset += segment.count;
+        }
+
+        return new DocumentText(segments, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(STR."Index \{index} out of bounds for length \{length}");
+        }
+
+        int chunk = chunkOf(index);
+        return chunkArrays[chunk][chunkOffsets[chunk] + index - chunkStarts[chunk]];
+    }
+
+    // Lexing reads front to back, so the chunk of the previous read almost always still holds the next.
+    private int chunkOf(int index) {
+        int chunk = currentChunk;
+        if (index < chunkStarts[chunk] || index >= chunkStarts[chunk + 1]) {
+            chunk = 0;
+            while (index >= chunkStarts[chunk + 1]) {
+                chunk++;
+            }
+            currentChunk = chunk;
+        }
+        return chunk;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length);
+    }
+
+    private String toString(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(STR."Range [\{start}, \{end}) out of bounds for length \{length}");
+        }
+
+        if (start == end) {
+            return "";
+        }
+
+        int chunk = chunkOf(start);
+        if (end <= chunkStarts[chunk + 1]) {
+            return new String(chunkArrays[chunk], chunkOffsets[chunk] + start - chunkStarts[chunk], end - start);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+}
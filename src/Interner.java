@@ -0,0 +1,26 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe string pool shared by lexers working on different documents, so
+ * an identifier that appears in a thousand files is held in memory once.
+ */
+public class Interner {
+    private final ConcurrentHashMap<String, String> table = new ConcurrentHashMap<>();
+
+    public String intern(String value) {
+        String existing = table.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Forgets {@code value}, for when nothing that was lexed with this
+     * interner uses it any more.
+     */
+    public void remove(String value) {
+        table.remove(value);
+    }
+
+    public int size() {
+        return table.size();
+    }
+}
@@ -0,0 +1,721 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a parsed program. The tree is first compiled into a tree of small
+ * closures with every variable resolved to a slot, so evaluation never looks
+ * at node type strings or names again. Numbers are 64-bit and kept unboxed in
+ * a {@code long[]}; arrays are {@code long[]} values held in a parallel slot
+ * table and are passed by reference.
+ *
+ * <p>Function calls run on a single preallocated frame stack: a frame holds
+ * the caller's frame pointer followed by the parameters and locals, all
+ * addressed by slot, so a call allocates nothing. Array locals live at the
+ * same positions in a parallel stack. Calls still nest on the Java stack, so
+ * programs with functions run on a thread whose stack is sized from the frame
+ * stack, up to a cap; running out of either is reported as a stack overflow
+ * {@link RuntimeError}.
+ */
+public class Interpreter {
+    // In slots; -Dinterpreter.stack=<slots> overrides it.
+    private static final int DEFAULT_FRAME_STACK_SIZE = Math.max(1, Integer.getInteger("interpreter.stack", 1 << 14));
+    // Java stack reserved per frame-stack slot, enough for a call with a few levels of nested expressions.
+    private static final long JAVA_STACK_PER_SLOT = 1024;
+    // The thread's stack is only reserved address space, but very large requests can still fail to start.
+    private static final long MAX_JAVA_STACK = 256L << 20;
+
+    private final PrintStream out;
+    private boolean checkedArithmetic = false;
+    private int frameStackSize = DEFAULT_FRAME_STACK_SIZE;
+
+    private final Map<String, Variable> variables = new HashMap<>();
+    private int numberSlotCount;
+    private int arraySlotCount;
+    private long[] numbers = new long[0];
+    private long[][] arrays = new long[0][];
+
+    private final Map<String, Function> functions = new HashMap<>();
+    // The scope of the function being compiled, or null at the top level.
+    private Map<String, Variable> locals;
+    private int localNumberCount;
+    private int localArrayCount;
+
+    private long[] stack = new long[0];
+    private long[][] arrayStack = new long[0][];
+    private int sp;
+    private int fp;
+    private int arraySp;
+    private int arrayFp;
+    private boolean returning;
+    private long returnValue;
+
+    public Interpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * When enabled, {@code +}, {@code -}, {@code *} and {@code /} raise a
+     * {@link RuntimeError} on 64-bit overflow instead of wrapping.
+     */
+    public void setCheckedArithmetic(boolean checkedArithmetic) {
+        this.checkedArithmetic = checkedArithmetic;
+    }
+
+    /**
+     * Sets the number of slots in the frame stack shared by all calls, which
+     * bounds how deeply functions can recurse.
+     */
+    public void setFrameStackSize(int frameStackSize) {
+        if (frameStackSize < 1) {
+            throw new IllegalArgumentException(STR."Frame stack size must be positive: \{frameStackSize}");
+        }
+        this.frameStackSize = frameStackSize;
+    }
+
+    public void run(AST program) {
+        variables.clear();
+        numberSlotCount = 0;
+        arraySlotCount = 0;
+        functions.clear();
+        locals = null;
+
+        declareFunctions(program);
+        Statement[] statements = compileBlock(program);
+
+        numbers = new long[numberSlotCount];
+        arrays = new long[arraySlotCount][];
+
+        if (functions.isEmpty()) {
+            executeBlock(statements);
+        } else {
+            try {
+                stack = new long[frameStackSize];
+                arrayStack = new long[frameStackSize][];
+            } catch (OutOfMemoryError e) {
+                stack = new long[0];
+                arrayStack = new long[0][];
+                throw new RuntimeError(STR."Cannot allocate a \{frameStackSize}-slot frame stack", 0);
+            }
+            sp = 0;
+            fp = 0;
+            arraySp = 0;
+            arrayFp = 0;
+            runWithCallStack(statements);
+        }
+        out.flush();
+    }
+
+    private void runWithCallStack(Statement[] statements) {
+        RuntimeException[] failure = new RuntimeException[1];
+        Error[] error = new Error[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                executeBlock(statements);
+            } catch (RuntimeException e) {
+                failure[0] = e;
+            } catch (Error e) {
+                error[0] = e;
+            }
+        }, "interpreter", Math.min((long) frameStackSize * JAVA_STACK_PER_SLOT, MAX_JAVA_STACK));
+
+        try {
+            thread.start();
+        } catch (OutOfMemoryError e) {
+            throw new RuntimeError(STR."Cannot start the interpreter thread: \{e.getMessage()}", 0);
+        }
+        // An interrupt is passed on to the program, which stops at its next check and reports it below.
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                thread.interrupt();
+            }
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    // Functions can be called before their declaration, so all of them are known before any body is compiled.
+    private void declareFunctions(AST program) {
+        for (AST node : program.getChildren()) {
+            if (!node.getType().equals("FunctionDeclaration")) {
+                continue;
+            }
+
+            AST name = node.getChildren().get(0);
+            if (functions.containsKey(name.getValue())) {
+                throw new RuntimeError(STR."Function '\{name.getValue()}' is already declared", name.getStart());
+            }
+            int parameterCount = node.getChildren().get(1).getChildren().size();
+            functions.put(name.getValue(), new Function(name.getValue(), parameterCount));
+        }
+    }
+
+    private Statement[] compileBlock(AST block) {
+        List<AST> children = block.getChildren();
+        Statement[] statements = new Statement[children.size()];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = compileStatement(children.get(i));
+        }
+        return statements;
+    }
+
+    private void executeBlock(Statement[] statements) {
+        for (Statement statement : statements) {
+            statement.execute();
+        }
+    }
+
+    // Function bodies stop at the first executed 'return'; top-level code never pays for the check.
+    private void executeFunctionBlock(Statement[] statements) {
+        for (Statement statement : statements) {
+            statement.execute();
+            if (returning) {
+                return;
+            }
+        }
+    }
+
+    private Statement compileStatement(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Declaration:":
+                return compileDeclaration(children.get(0), children.get(1));
+            case "Assignment":
+                return compileAssignment(children.get(0), children.get(1));
+            case "IndexAssignment": {
+                Variable variable = lookup(children.get(0), true);
+                NumberExpression index = compileNumber(children.get(1));
+                NumberExpression value = compileNumber(children.get(2));
+                int offset = node.getStart();
+                if (!variable.local()) {
+                    int slot = variable.slot();
+                    return () -> {
+                        long[] array = arrays[slot];
+                        array[checkIndex(array, index.evaluate(), offset)] = value.evaluate();
+                    };
+                }
+                ArrayExpression target = loadArray(variable);
+                return () -> {
+                    long[] array = target.evaluate();
+                    array[checkIndex(array, index.evaluate(), offset)] = value.evaluate();
+                };
+            }
+            case "IfStatement": {
+                Condition condition = compileCondition(children.get(0));
+                Statement[] body = compileBlock(children.get(1));
+                if (locals != null) {
+                    return () -> {
+                        if (condition.test()) {
+                            executeFunctionBlock(body);
+                        }
+                    };
+                }
+                return () -> {
+                    if (condition.test()) {
+                        executeBlock(body);
+                    }
+                };
+            }
+            case "WhileStatement:": {
+                Condition condition = compileCondition(children.get(0));
+                Statement[] body = compileBlock(children.get(1));
+                int offset = node.getStart();
+                if (locals != null) {
+                    return () -> {
+                        while (!returning && condition.test()) {
+                            checkStopped(offset);
+                            executeFunctionBlock(body);
+                        }
+                    };
+                }
+                return () -> {
+                    while (condition.test()) {
+                        checkStopped(offset);
+                        executeBlock(body);
+                    }
+                };
+            }
+            case "FunctionDeclaration":
+                compileFunction(node);
+                return () -> {
+                };
+            case "ReturnStatement": {
+                if (locals == null) {
+                    throw new RuntimeError("'return' outside of a function", node.getStart());
+                }
+                if (children.isEmpty()) {
+                    return () -> {
+                        returnValue = 0;
+                        returning = true;
+                    };
+                }
+                NumberExpression value = compileNumber(children.get(0));
+                return () -> {
+                    returnValue = value.evaluate();
+                    returning = true;
+                };
+            }
+            case "CallStatement": {
+                NumberExpression call = compileCall(children.get(0));
+                return call::evaluate;
+            }
+            case "PrintStatement": {
+                AST expression = children.get(0);
+                if (isArrayExpression(expression)) {
+                    ArrayExpression array = compileArray(expression);
+                    return () -> out.println(Arrays.toString(array.evaluate()));
+                }
+                NumberExpression value = compileNumber(expression);
+                return () -> out.println(value.evaluate());
+            }
+            default:
+                throw new RuntimeError(STR."Cannot execute \{node.getType()}", node.getStart());
+        }
+    }
+
+    private Statement compileDeclaration(AST identifier, AST expression) {
+        boolean array = isArrayExpression(expression);
+
+        // The initializer sees the variables in scope before this declaration.
+        if (array) {
+            ArrayExpression value = compileArray(expression);
+            return storeArray(declare(identifier, true), value);
+        }
+
+        NumberExpression value = compileNumber(expression);
+        return storeNumber(declare(identifier, false), value);
+    }
+
+    private Statement compileAssignment(AST identifier, AST expression) {
+        Variable variable = lookup(identifier, isArrayExpression(expression));
+
+        if (variable.array()) {
+            return storeArray(variable, compileArray(expression));
+        }
+
+        return storeNumber(variable, compileNumber(expression));
+    }
+
+    private Statement storeNumber(Variable variable, NumberExpression value) {
+        int slot = variable.slot();
+        if (variable.local()) {
+            return () -> stack[fp + slot] = value.evaluate();
+        }
+        return () -> numbers[slot] = value.evaluate();
+    }
+
+    private Statement storeArray(Variable variable, ArrayExpression value) {
+        int slot = variable.slot();
+        if (variable.local()) {
+            return () -> arrayStack[arrayFp + slot] = value.evaluate();
+        }
+        return () -> arrays[slot] = value.evaluate();
+    }
+
+    private NumberExpression loadNumber(Variable variable) {
+        int slot = variable.slot();
+        if (variable.local()) {
+            return () -> stack[fp + slot];
+        }
+        return () -> numbers[slot];
+    }
+
+    private ArrayExpression loadArray(Variable variable) {
+        int slot = variable.slot();
+        if (variable.local()) {
+            return () -> arrayStack[arrayFp + slot];
+        }
+        return () -> arrays[slot];
+    }
+
+    private void compileFunction(AST node) {
+        List<AST> children = node.getChildren();
+        if (locals != null) {
+            throw new RuntimeError("Functions can only be declared at the top level", node.getStart());
+        }
+
+        Function function = functions.get(children.get(0).getValue());
+        if (function == null) {
+            // Only top-level declarations are hoisted; the parser rejects the others.
+            throw new RuntimeError("Functions can only be declared at the top level", node.getStart());
+        }
+        locals = new HashMap<>();
+        localNumberCount = 0;
+        localArrayCount = 0;
+        try {
+            for (AST parameter : children.get(1).getChildren()) {
+                if (locals.containsKey(parameter.getValue())) {
+                    throw new RuntimeError(STR."Duplicate parameter '\{parameter.getValue()}'", parameter.getStart());
+                }
+                declare(parameter, false);
+            }
+
+            function.body = compileBlock(children.get(2));
+            // Slot 0 of every frame holds the caller's frame pointer, so each call takes at least one slot.
+            function.frameSize = 1 + localNumberCount;
+            function.arraySlots = localArrayCount;
+        } finally {
+            locals = null;
+        }
+    }
+
+    private NumberExpression compileCall(AST node) {
+        Function function = functions.get(node.getValue());
+        if (function == null) {
+            throw new RuntimeError(STR."Undefined function '\{node.getValue()}'", node.getStart());
+        }
+
+        List<AST> children = node.getChildren();
+        if (children.size() != function.parameterCount) {
+            String noun = function.parameterCount == 1 ? "argument" : "arguments";
+            throw new RuntimeError(STR."'\{function.name}' expects \{function.parameterCount} \{noun} but got \{children.size()}",
+                    node.getStart());
+        }
+
+        NumberExpression[] arguments = new NumberExpression[children.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compileNumber(children.get(i));
+        }
+        // Functions cannot be redeclared, so the target is bound here; its body is filled in by the time it runs.
+        int offset = node.getStart();
+        return () -> call(function, arguments, offset);
+    }
+
+    private long call(Function function, NumberExpression[] arguments, int offset) {
+        checkStopped(offset);
+        int base = sp;
+        int top = base + function.frameSize;
+        int arrayBase = arraySp;
+        if (top > stack.length || arrayBase + function.arraySlots > arrayStack.length) {
+            throw new RuntimeError(STR."Stack overflow: the \{stack.length}-slot frame stack is full", offset);
+        }
+
+        // Arguments are evaluated in the caller's frame; bumping sp past each one keeps nested calls clear of them.
+        stack[base] = fp;
+        sp = base + 1;
+        for (NumberExpression argument : arguments) {
+            long value = argument.evaluate();
+            stack[sp++] = value;
+        }
+        Arrays.fill(stack, sp, top, 0);
+
+        int callerArrayFp = arrayFp;
+        fp = base + 1;
+        sp = top;
+        arrayFp = arrayBase;
+        arraySp = arrayBase + function.arraySlots;
+
+        try {
+            executeFunctionBlock(function.body);
+        } catch (StackOverflowError e) {
+            throw new RuntimeError("Stack overflow: calls are nested too deeply for the interpreter thread's stack",
+                    offset);
+        }
+
+        long result = returning ? returnValue : 0;
+        returning = false;
+
+        if (function.arraySlots > 0) {
+            Arrays.fill(arrayStack, arrayBase, arraySp, null);
+        }
+        fp = (int) stack[base];
+        sp = base;
+        arrayFp = callerArrayFp;
+        arraySp = arrayBase;
+        return result;
+    }
+
+    /**
+     * Ends the program if its thread has been interrupted, which is how the
+     * editor stops one. Loops and calls check, so every program that runs for
+     * long reaches a check soon.
+     */
+    private static void checkStopped(int offset) {
+        if (Thread.interrupted()) {
+            throw new RuntimeError("Stopped", offset);
+        }
+    }
+
+    private Condition compileCondition(AST node) {
+        List<AST> children = node.getChildren();
+        NumberExpression left = compileNumber(children.get(0));
+        NumberExpression right = compileNumber(children.get(2));
+
+        switch (children.get(1).getValue()) {
+            case "==":
+                return () -> left.evaluate() == right.evaluate();
+            case "!=":
+                return () -> left.evaluate() != right.evaluate();
+            case "<":
+                return () -> left.evaluate() < right.evaluate();
+            case ">":
+                return () -> left.evaluate() > right.evaluate();
+            case "<=":
+                return () -> left.evaluate() <= right.evaluate();
+            case ">=":
+                return () -> left.evaluate() >= right.evaluate();
+            default:
+                throw new RuntimeError(STR."Unknown relational operator \{children.get(1).getValue()}", node.getStart());
+        }
+    }
+
+    private NumberExpression compileNumber(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Number": {
+                long value = Long.parseLong(node.getValue());
+                return () -> value;
+            }
+            case "Identifier":
+                return loadNumber(lookup(node, false));
+            case "Index": {
+                Variable variable = lookup(children.get(0), true);
+                NumberExpression index = compileNumber(children.get(1));
+                int offset = node.getStart();
+                if (!variable.local()) {
+                    int slot = variable.slot();
+                    return () -> {
+                        long[] array = arrays[slot];
+                        return array[checkIndex(array, index.evaluate(), offset)];
+                    };
+                }
+                ArrayExpression target = loadArray(variable);
+                return () -> {
+                    long[] array = target.evaluate();
+                    return array[checkIndex(array, index.evaluate(), offset)];
+                };
+            }
+            case "Call":
+                return compileCall(node);
+            case "Expression":
+            case "Term":
+                return compileArithmetic(compileNumber(children.get(0)), children.get(1).getValue(),
+                        compileNumber(children.get(2)), node.getStart());
+            default:
+                throw new RuntimeError(STR."Expected a number but found \{node.getType()}", node.getStart());
+        }
+    }
+
+    private NumberExpression compileArithmetic(NumberExpression left, String operator, NumberExpression right,
+                                               int offset) {
+        switch (operator) {
+            case "+":
+                if (checkedArithmetic) {
+                    return () -> {
+                        try {
+                            return Math.addExact(left.evaluate(), right.evaluate());
+                        } catch (ArithmeticException e) {
+                            throw new RuntimeError("Integer overflow in '+'", offset);
+                        }
+                    };
+                }
+                return () -> left.evaluate() + right.evaluate();
+            case "-":
+                if (checkedArithmetic) {
+                    return () -> {
+                        try {
+                            return Math.subtractExact(left.evaluate(), right.evaluate());
+                        } catch (ArithmeticException e) {
+                            throw new RuntimeError("Integer overflow in '-'", offset);
+                        }
+                    };
+                }
+                return () -> left.evaluate() - right.evaluate();
+            case "*":
+                if (checkedArithmetic) {
+                    return () -> {
+                        try {
+                            return Math.multiplyExact(left.evaluate(), right.evaluate());
+                        } catch (ArithmeticException e) {
+                            throw new RuntimeError("Integer overflow in '*'", offset);
+                        }
+                    };
+                }
+                return () -> left.evaluate() * right.evaluate();
+            case "/":
+                boolean checked = checkedArithmetic;
+                return () -> {
+                    long dividend = left.evaluate();
+                    long divisor = right.evaluate();
+                    if (divisor == 0) {
+                        throw new RuntimeError("Division by zero", offset);
+                    }
+                    if (checked && dividend == Long.MIN_VALUE && divisor == -1) {
+                        throw new RuntimeError("Integer overflow in '/'", offset);
+                    }
+                    return dividend / divisor;
+                };
+            default:
+                throw new RuntimeError(STR."Unknown operator \{operator}", offset);
+        }
+    }
+
+    private ArrayExpression compileArray(AST node) {
+        switch (node.getType()) {
+            case "ArrayLiteral": {
+                List<AST> children = node.getChildren();
+                NumberExpression[] elements = new NumberExpression[children.size()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = compileNumber(children.get(i));
+                }
+                return () -> {
+                    long[] array = new long[elements.length];
+                    for (int i = 0; i < elements.length; i++) {
+                        array[i] = elements[i].evaluate();
+                    }
+                    return array;
+                };
+            }
+            case "Identifier":
+                return loadArray(lookup(node, true));
+            default:
+                throw new RuntimeError(STR."Expected an array but found \{node.getType()}", node.getStart());
+        }
+    }
+
+    private boolean isArrayExpression(AST node) {
+        if (node.getType().equals("ArrayLiteral")) {
+            return true;
+        }
+        if (node.getType().equals("Identifier")) {
+            Variable variable = resolve(node.getValue());
+            return variable != null && variable.array();
+        }
+        return false;
+    }
+
+    private Variable declare(AST identifier, boolean array) {
+        Map<String, Variable> scope = locals != null ? locals : variables;
+        Variable existing = scope.get(identifier.getValue());
+        if (existing != null) {
+            if (existing.array() != array) {
+                throw new RuntimeError(STR."'\{identifier.getValue()}' is already declared as \{describe(existing.array())}",
+                        identifier.getStart());
+            }
+            return existing;
+        }
+
+        Variable variable;
+        if (locals != null) {
+            variable = new Variable(array ? localArrayCount++ : localNumberCount++, array, true);
+        } else {
+            variable = new Variable(array ? arraySlotCount++ : numberSlotCount++, array, false);
+        }
+        scope.put(identifier.getValue(), variable);
+        return variable;
+    }
+
+    // Inside a function, locals shadow the top-level variables declared before it.
+    private Variable resolve(String name) {
+        if (locals != null) {
+            Variable local = locals.get(name);
+            if (local != null) {
+                return local;
+            }
+        }
+        return variables.get(name);
+    }
+
+    private Variable lookup(AST identifier, boolean array) {
+        Variable variable = resolve(identifier.getValue());
+        if (variable == null) {
+            throw new RuntimeError(STR."Undefined variable '\{identifier.getValue()}'", identifier.getStart());
+        }
+        if (variable.array() != array) {
+            throw new RuntimeError(STR."'\{identifier.getValue()}' is \{describe(variable.array())}, not \{describe(array)}",
+                    identifier.getStart());
+        }
+        return variable;
+    }
+
+    private static String describe(boolean array) {
+        return array ? "an array" : "a number";
+    }
+
+    private static int checkIndex(long[] array, long index, int offset) {
+        if (array == null) {
+            throw new RuntimeError("Array used before it was assigned", offset);
+        }
+        if (index < 0 || index >= array.length) {
+            throw new RuntimeError(STR."Index \{index} out of bounds for length \{array.length}", offset);
+        }
+        return (int) index;
+    }
+
+    private record Variable(int slot, boolean array, boolean local) {
+    }
+
+    // Bodies and frame sizes are filled in when the declaration is compiled, which may be after its first call site.
+    private static final class Function {
+        private final String name;
+        private final int parameterCount;
+        private Statement[] body;
+        private int frameSize;
+        private int arraySlots;
+
+        private Function(String name, int parameterCount) {
+            this.name = name;
+            this.parameterCount = parameterCount;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Interpreter [--checked] <file>");
+            return;
+        }
+
+        boolean checked = args[0].equals("--checked");
+        String text = Files.readString(Path.of(args[args.length - 1]));
+
+        Parser parser = new Parser(null);
+        Lexer lexer = ParsePipeline.shouldPipeline(text.length())
+                ? ParsePipeline.parse(text, parser) : ParsePipeline.parseSequentially(text, parser);
+        if (!parser.getErrors().isEmpty()) {
+            System.exit(1);
+        }
+
+        Interpreter interpreter = new Interpreter(System.out);
+        interpreter.setCheckedArithmetic(checked);
+        try {
+            interpreter.run(parser.getRootNode());
+        } catch (RuntimeError e) {
+            LineIndex lineIndex = lexer.getLineIndex();
+            int line = lineIndex.lineOf(e.getOffset()) + 1;
+            int column = lineIndex.columnOf(e.getOffset()) + 1;
+            System.err.println(STR."Runtime error at line \{line}, column \{column}: \{e.getMessage()}");
+            System.exit(1);
+        }
+    }
+
+    private interface Statement {
+        void execute();
+    }
+
+    private interface Condition {
+        boolean test();
+    }
+
+    private interface NumberExpression {
+        long evaluate();
+    }
+
+    private interface ArrayExpression {
+        long[] evaluate();
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers an {@link IrFunction} to flat register code and runs it. Every SSA
+ * value gets its own register, phis become parallel copies on the incoming
+ * edges, and each operation is four ints: an opcode and up to three operands.
+ */
+public class IrBackend {
+    private static final int CONST = 0;
+    private static final int CONST_NULL = 1;
+    private static final int MOVE = 2;
+    private static final int ADD = 3;
+    private static final int SUB = 4;
+    private static final int MUL = 5;
+    private static final int DIV = 6;
+    private static final int SHL = 7;
+    private static final int EQ = 8;
+    private static final int NE = 9;
+    private static final int LT = 10;
+    private static final int GT = 11;
+    private static final int LE = 12;
+    private static final int GE = 13;
+    private static final int ARRAY_NEW = 14;
+    private static final int ARRAY_LOAD = 15;
+    private static final int ARRAY_STORE = 16;
+    private static final int PRINT = 17;
+    private static final int PRINT_ARRAY = 18;
+    private static final int JUMP = 19;
+    private static final int BRANCH = 20;
+    private static final int HALT = 21;
+    private static final int CHECK_INDEX = 22;
+
+    private static final int WIDTH = 4;
+
+    private int[] code = new int[256];
+    private int[] offsets = new int[64];
+    private int size = 0;
+    private long[] constants = new long[16];
+    private int constantCount = 0;
+    private int[] arguments = new int[16];
+    private int argumentCount = 0;
+    private final int registerCount;
+    private final int scratchBase;
+
+    private final Map<IrBlock, Integer> blockPcs = new HashMap<>();
+    private final Map<Integer, IrBlock> pendingTargets = new HashMap<>();
+
+    private IrBackend(IrFunction function) {
+        int maxPhis = 0;
+        for (IrBlock block : function.getBlocks()) {
+            maxPhis = Math.max(maxPhis, block.getPhis().size());
+        }
+        this.scratchBase = function.getInstructionCount();
+        this.registerCount = scratchBase + maxPhis;
+    }
+
+    public static Program lower(IrFunction function) {
+        IrBackend backend = new IrBackend(function);
+        backend.lowerFunction(function);
+        return new Program(Arrays.copyOf(backend.code, backend.size * WIDTH),
+                Arrays.copyOf(backend.offsets, backend.size), Arrays.copyOf(backend.constants, backend.constantCount),
+                Arrays.copyOf(backend.arguments, backend.argumentCount), backend.registerCount);
+    }
+
+    private void lowerFunction(IrFunction function) {
+        for (IrBlock block : function.reversePostorder()) {
+            blockPcs.put(block, size);
+            for (IrInstruction instruction : block.getInstructions()) {
+                lowerInstruction(block, instruction);
+            }
+        }
+
+        for (Map.Entry<Integer, IrBlock> entry : pendingTargets.entrySet()) {
+            code[entry.getKey()] = blockPcs.get(entry.getValue());
+        }
+    }
+
+    private void lowerInstruction(IrBlock block, IrInstruction instruction) {
+        int dst = instruction.getId();
+        List<IrInstruction> operands = instruction.getOperands();
+        int offset = instruction.getOffset();
+
+        switch (instruction.getOp()) {
+            case CONST:
+                if (instruction.getType() == IrType.ARRAY) {
+                    emit(CONST_NULL, dst, 0, 0, offset);
+                } else {
+                    emit(CONST, dst, addConstant(instruction.getConstant()), 0, offset);
+                }
+                break;
+            case COPY:
+                emit(MOVE, dst, operands.get(0).getId(), 0, offset);
+                break;
+            case ADD, SUB, MUL, DIV, SHL, EQ, NE, LT, GT, LE, GE:
+                emit(binaryOpcode(instruction.getOp()), dst, operands.get(0).getId(), operands.get(1).getId(), offset);
+                break;
+            case ARRAY_NEW: {
+                int start = argumentCount;
+                for (IrInstruction operand : operands) {
+                    addArgument(operand.getId());
+                }
+                emit(ARRAY_NEW, dst, start, operands.size(), offset);
+                break;
+            }
+            case ARRAY_LOAD:
+                emit(ARRAY_LOAD, dst, operands.get(0).getId(), operands.get(1).getId(), offset);
+                break;
+            case ARRAY_STORE:
+                emit(ARRAY_STORE, operands.get(0).getId(), operands.get(1).getId(), operands.get(2).getId(), offset);
+                break;
+            case CHECK_INDEX:
+                emit(CHECK_INDEX, operands.get(0).getId(), operands.get(1).getId(), 0, offset);
+                break;
+            case PRINT:
+                emit(PRINT, operands.get(0).getId(), 0, 0, offset);
+                break;
+            case PRINT_ARRAY:
+                emit(PRINT_ARRAY, operands.get(0).getId(), 0, 0, offset);
+                break;
+            case JUMP: {
+                IrBlock target = block.getSuccessors().getFirst();
+                emitEdgeCopies(block, target);
+                emitJump(target);
+                break;
+            }
+            case BRANCH: {
+                IrBlock ifTrue = block.getSuccessors().get(0);
+                IrBlock ifFalse = block.getSuccessors().get(1);
+                int branch = emit(BRANCH, operands.get(0).getId(), 0, 0, offset);
+
+                // Edges into blocks with phis get a stub holding that edge's copies.
+                int[] slots = {branch * WIDTH + 2, branch * WIDTH + 3};
+                IrBlock[] targets = {ifTrue, ifFalse};
+                for (int i = 0; i < 2; i++) {
+                    if (targets[i].getPhis().isEmpty()) {
+                        pendingTargets.put(slots[i], targets[i]);
+                    } else {
+                        code[slots[i]] = size;
+                        emitEdgeCopies(block, targets[i]);
+                        emitJump(targets[i]);
+                    }
+                }
+                break;
+            }
+            case RETURN:
+                emit(HALT, 0, 0, 0, offset);
+                break;
+            default:
+                throw new IllegalStateException(STR."Cannot lower \{instruction.getOp()}");
+        }
+    }
+
+    private void emitEdgeCopies(IrBlock from, IrBlock to) {
+        List<IrInstruction> phis = to.getPhis();
+        if (phis.isEmpty()) {
+            return;
+        }
+
+        int edge = to.getPredecessors().indexOf(from);
+        for (int i = 0; i < phis.size(); i++) {
+            emit(MOVE, scratchBase + i, phis.get(i).getOperand(edge).getId(), 0, 0);
+        }
+        for (int i = 0; i < phis.size(); i++) {
+            emit(MOVE, phis.get(i).getId(), scratchBase + i, 0, 0);
+        }
+    }
+
+    private void emitJump(IrBlock target) {
+        int jump = emit(JUMP, 0, 0, 0, 0);
+        pendingTargets.put(jump * WIDTH + 1, target);
+    }
+
+    private static int binaryOpcode(IrOp op) {
+        switch (op) {
+            case ADD: return ADD;
+            case SUB: return SUB;
+            case MUL: return MUL;
+            case DIV: return DIV;
+            case SHL: return SHL;
+            case EQ: return EQ;
+            case NE: return NE;
+            case LT: return LT;
+            case GT: return GT;
+            case LE: return LE;
+            case GE: return GE;
+            default: throw new IllegalArgumentException(op.name());
+        }
+    }
+
+    private int emit(int opcode, int a, int b, int c, int offset) {
+        if ((size + 1) * WIDTH > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+
+        int base = size * WIDTH;
+        code[base] = opcode;
+        code[base + 1] = a;
+        code[base + 2] = b;
+        code[base + 3] = c;
+        offsets[size] = offset;
+        return size++;
+    }
+
+    private int addConstant(long value) {
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+
+    private void addArgument(int register) {
+        if (argumentCount == arguments.length) {
+            arguments = Arrays.copyOf(arguments, argumentCount * 2);
+        }
+        arguments[argumentCount++] = register;
+    }
+
+    /**
+     * Lowered code ready to run. Registers are reset on every run.
+     */
+    public static final class Program {
+        private final int[] code;
+        private final int[] offsets;
+        private final long[] constants;
+        private final int[] arguments;
+        private final int registerCount;
+
+        private Program(int[] code, int[] offsets, long[] constants, int[] arguments, int registerCount) {
+            this.code = code;
+            this.offsets = offsets;
+            this.constants = constants;
+            this.arguments = arguments;
+            this.registerCount = registerCount;
+        }
+
+        public void run(PrintStream out) {
+            long[] numbers = new long[registerCount];
+            long[][] arrays = new long[registerCount][];
+            int pc = 0;
+
+            while (true) {
+                int base = pc * WIDTH;
+                int a = code[base + 1];
+                int b = code[base + 2];
+                int c = code[base + 3];
+                pc++;
+
+                switch (code[base]) {
+                    case CONST -> numbers[a] = constants[b];
+                    case CONST_NULL -> arrays[a] = null;
+                    case MOVE -> {
+                        numbers[a] = numbers[b];
+                        arrays[a] = arrays[b];
+                    }
+                    case ADD -> numbers[a] = numbers[b] + numbers[c];
+                    case SUB -> numbers[a] = numbers[b] - numbers[c];
+                    case MUL -> numbers[a] = numbers[b] * numbers[c];
+                    case DIV -> {
+                        if (numbers[c] == 0) {
+                            throw new RuntimeError("Division by zero", offsets[pc - 1]);
+                        }
+                        numbers[a] = numbers[b] / numbers[c];
+                    }
+                    case SHL -> numbers[a] = numbers[b] << numbers[c];
+                    case EQ -> numbers[a] = numbers[b] == numbers[c] ? 1 : 0;
+                    case NE -> numbers[a] = numbers[b] != numbers[c] ? 1 : 0;
+                    case LT -> numbers[a] = numbers[b] < numbers[c] ? 1 : 0;
+                    case GT -> numbers[a] = numbers[b] > numbers[c] ? 1 : 0;
+                    case LE -> numbers[a] = numbers[b] <= numbers[c] ? 1 : 0;
+                    case GE -> numbers[a] = numbers[b] >= numbers[c] ? 1 : 0;
+                    case ARRAY_NEW -> {
+                        long[] array = new long[c];
+                        for (int i = 0; i < c; i++) {
+                            array[i] = numbers[arguments[b + i]];
+                        }
+                        arrays[a] = array;
+                    }
+                    case ARRAY_LOAD -> {
+                        long[] array = arrays[b];
+                        numbers[a] = array[checkIndex(array, numbers[c], offsets[pc - 1])];
+                    }
+                    case ARRAY_STORE -> {
+                        long[] array = arrays[a];
+                        array[checkIndex(array, numbers[b], offsets[pc - 1])] = numbers[c];
+                    }
+                    case CHECK_INDEX -> checkIndex(arrays[a], numbers[b], offsets[pc - 1]);
+                    case PRINT -> out.println(numbers[a]);
+                    case PRINT_ARRAY -> out.println(Arrays.toString(arrays[a]));
+                    case JUMP -> pc = a;
+                    case BRANCH -> pc = numbers[a] != 0 ? b : c;
+                    case HALT -> {
+                        out.flush();
+                        return;
+                    }
+                    default -> throw new IllegalStateException(STR."Bad opcode \{code[base]}");
+                }
+            }
+        }
+
+        private static int checkIndex(long[] array, long index, int offset) {
+            if (array == null) {
+                throw new RuntimeError("Array used before it was assigned", offset);
+            }
+            if (index < 0 || index >= array.length) {
+                throw new RuntimeError(STR."Index \{index} out of bounds for length \{array.length}", offset);
+            }
+            return (int) index;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: IrBackend [--dump] <file>");
+            return;
+        }
+
+        boolean dump = args[0].equals("--dump");
+        String text = Files.readString(Path.of(args[args.length - 1]));
+
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        if (!parser.getErrors().isEmpty()) {
+            System.exit(1);
+        }
+
+        try {
+            IrFunction function = IrBuilder.build(parser.getRootNode());
+            if (dump) {
+                System.err.println(STR."; before optimization\n\{function.dump()}");
+            }
+
+            IrOptimizer.optimize(function);
+            if (dump) {
+                System.err.println(STR."; after optimization\n\{function.dump()}");
+            }
+
+            lower(function).run(System.out);
+        } catch (RuntimeError e) {
+            LineIndex lineIndex = lexer.getLineIndex();
+            int line = lineIndex.lineOf(e.getOffset()) + 1;
+            int column = lineIndex.columnOf(e.getOffset()) + 1;
+            System.err.println(STR."Runtime error at line \{line}, column \{column}: \{e.getMessage()}");
+            System.exit(1);
+        }
+    }
+}
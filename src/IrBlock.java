@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A basic block: phis, then straight-line instructions, ending in exactly
+ * one terminator once the block is complete.
+ */
+public class IrBlock {
+    private final int id;
+    private final String label;
+    private final List<IrInstruction> phis = new ArrayList<>();
+    private final List<IrInstruction> instructions = new ArrayList<>();
+    private final List<IrBlock> predecessors = new ArrayList<>();
+    private final List<IrBlock> successors = new ArrayList<>();
+
+    IrBlock(int id, String label) {
+        this.id = id;
+        this.label = label;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String name() {
+        return STR."b\{id}";
+    }
+
+    public List<IrInstruction> getPhis() {
+        return phis;
+    }
+
+    public List<IrInstruction> getInstructions() {
+        return instructions;
+    }
+
+    public List<IrBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    public List<IrBlock> getSuccessors() {
+        return successors;
+    }
+
+    public IrInstruction getTerminator() {
+        if (instructions.isEmpty()) {
+            return null;
+        }
+        IrInstruction last = instructions.getLast();
+        return last.getOp().isTerminator() ? last : null;
+    }
+
+    public boolean isTerminated() {
+        return getTerminator() != null;
+    }
+
+    void addPhi(IrInstruction phi) {
+        phi.setBlock(this);
+        phis.add(phi);
+    }
+
+    void append(IrInstruction instruction) {
+        instruction.setBlock(this);
+        instructions.add(instruction);
+    }
+
+    void prepend(IrInstruction instruction) {
+        instruction.setBlock(this);
+        instructions.addFirst(instruction);
+    }
+
+    void insertBefore(IrInstruction anchor, IrInstruction instruction) {
+        instruction.setBlock(this);
+        instructions.add(instructions.indexOf(anchor), instruction);
+    }
+
+    /**
+     * Inserts an instruction just before the terminator, used when code is
+     * hoisted into a loop preheader.
+     */
+    void insertBeforeTerminator(IrInstruction instruction) {
+        instruction.setBlock(this);
+        int index = isTerminated() ? instructions.size() - 1 : instructions.size();
+        instructions.add(index, instruction);
+    }
+
+    void addSuccessor(IrBlock successor) {
+        successors.add(successor);
+        successor.predecessors.add(this);
+    }
+
+    void dump(StringBuilder sb) {
+        sb.append(name()).append(" (").append(label).append(')');
+        if (!predecessors.isEmpty()) {
+            sb.append("  <- ");
+            for (int i = 0; i < predecessors.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(predecessors.get(i).name());
+            }
+        }
+        sb.append('\n');
+
+        for (IrInstruction phi : phis) {
+            sb.append("    ").append(phi).append('\n');
+        }
+        for (IrInstruction instruction : instructions) {
+            sb.append("    ").append(instruction);
+            if (instruction.getOp() == IrOp.JUMP || instruction.getOp() == IrOp.BRANCH) {
+                sb.append(" -> ");
+                for (int i = 0; i < successors.size(); i++) {
+                    if (i > 0) sb.append(", ");
+                    sb.append(successors.get(i).name());
+                }
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates a parse tree into an {@link IrFunction} in SSA form. Variables
+ * are renamed on the fly as blocks are filled, following Braun et al.,
+ * "Simple and Efficient Construction of Static Single Assignment Form": a
+ * block's phis are only completed once all of its predecessors are known.
+ *
+ * <p>Variable kinds follow the same rules as {@link Interpreter}: a name is a
+ * number or an array depending on its first declaration.
+ */
+public class IrBuilder {
+    private final IrFunction function = new IrFunction();
+    private final Map<String, IrType> kinds = new HashMap<>();
+    private final Map<String, Map<IrBlock, IrInstruction>> currentDef = new HashMap<>();
+    private final Map<IrBlock, Map<String, IrInstruction>> incompletePhis = new HashMap<>();
+    private final Set<IrBlock> sealed = new HashSet<>();
+    private IrBlock current;
+
+    public static IrFunction build(AST program) {
+        return new IrBuilder().buildProgram(program);
+    }
+
+    private IrFunction buildProgram(AST program) {
+        current = function.newBlock("entry");
+        seal(current);
+
+        lowerBlock(program);
+        emit(IrOp.RETURN, IrType.VOID, 0, program.getStart());
+
+        return function;
+    }
+
+    private void lowerBlock(AST block) {
+        for (AST statement : block.getChildren()) {
+            lowerStatement(statement);
+        }
+    }
+
+    private void lowerStatement(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Declaration:": {
+                AST identifier = children.get(0);
+                IrInstruction value = lowerValue(children.get(1));
+                declare(identifier, value.getType());
+                writeVariable(identifier.getValue(), current, copyIfVariable(children.get(1), value));
+                break;
+            }
+            case "Assignment": {
+                AST identifier = children.get(0);
+                IrInstruction value = lowerValue(children.get(1));
+                lookup(identifier, value.getType());
+                writeVariable(identifier.getValue(), current, copyIfVariable(children.get(1), value));
+                break;
+            }
+            case "IndexAssignment": {
+                IrInstruction array = readArray(children.get(0));
+                IrInstruction index = lowerNumber(children.get(1));
+                // The interpreter checks the target before evaluating the value, so a trap in the value must not come first.
+                if (mayTrap(children.get(2))) {
+                    emit(IrOp.CHECK_INDEX, IrType.VOID, 0, node.getStart(), array, index);
+                }
+                IrInstruction value = lowerNumber(children.get(2));
+                emit(IrOp.ARRAY_STORE, IrType.VOID, 0, node.getStart(), array, index, value);
+                break;
+            }
+            case "IfStatement": {
+                IrInstruction condition = lowerCondition(children.get(0));
+                IrBlock thenBlock = function.newBlock("if.then");
+                IrBlock endBlock = function.newBlock("if.end");
+                branch(condition, thenBlock, endBlock);
+
+                seal(thenBlock);
+                current = thenBlock;
+                lowerBlock(children.get(1));
+                jump(endBlock);
+
+                seal(endBlock);
+                current = endBlock;
+                break;
+            }
+            case "WhileStatement:": {
+                // A dedicated preheader gives loop-invariant code motion somewhere to put hoisted code.
+                IrBlock preheader = function.newBlock("while.preheader");
+                jump(preheader);
+                seal(preheader);
+                current = preheader;
+
+                IrBlock header = function.newBlock("while.cond");
+                jump(header);
+                current = header;
+
+                IrInstruction condition = lowerCondition(children.get(0));
+                IrBlock body = function.newBlock("while.body");
+                IrBlock exit = function.newBlock("while.end");
+                branch(condition, body, exit);
+
+                seal(body);
+                current = body;
+                lowerBlock(children.get(1));
+                jump(header);
+
+                seal(header);
+                seal(exit);
+                current = exit;
+                break;
+            }
+            case "PrintStatement": {
+                IrInstruction value = lowerValue(children.get(0));
+                IrOp op = value.getType() == IrType.ARRAY ? IrOp.PRINT_ARRAY : IrOp.PRINT;
+                emit(op, IrType.VOID, 0, node.getStart(), value);
+                break;
+            }
+            case "FunctionDeclaration":
+            case "ReturnStatement":
+            case "CallStatement":
+                throw new RuntimeError("Functions are not supported by the IR backend yet; use --run", node.getStart());
+            default:
+                throw new RuntimeError(STR."Cannot execute \{node.getType()}", node.getStart());
+        }
+    }
+
+    private static boolean mayTrap(AST expression) {
+        if (expression == null) {
+            return false;
+        }
+        if (expression.getType().equals("Index")) {
+            return true;
+        }
+        if (expression.getType().equals("Term") && "/".equals(expression.getChildren().get(1).getValue())) {
+            return true;
+        }
+        for (AST child : expression.getChildren()) {
+            if (mayTrap(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Plain 'x = y' becomes an explicit copy, which copy propagation then folds away.
+    private IrInstruction copyIfVariable(AST expression, IrInstruction value) {
+        if (expression.getType().equals("Identifier")) {
+            return emit(IrOp.COPY, value.getType(), 0, expression.getStart(), value);
+        }
+        return value;
+    }
+
+    private IrInstruction lowerCondition(AST node) {
+        List<AST> children = node.getChildren();
+        IrInstruction left = lowerNumber(children.get(0));
+        IrInstruction right = lowerNumber(children.get(2));
+
+        IrOp op;
+        switch (children.get(1).getValue()) {
+            case "==" -> op = IrOp.EQ;
+            case "!=" -> op = IrOp.NE;
+            case "<" -> op = IrOp.LT;
+            case ">" -> op = IrOp.GT;
+            case "<=" -> op = IrOp.LE;
+            case ">=" -> op = IrOp.GE;
+            default -> throw new RuntimeError(STR."Unknown relational operator \{children.get(1).getValue()}",
+                    node.getStart());
+        }
+
+        return emit(op, IrType.LONG, 0, node.getStart(), left, right);
+    }
+
+    private IrInstruction lowerNumber(AST node) {
+        IrInstruction value = lowerValue(node);
+        if (value.getType() != IrType.LONG) {
+            throw new RuntimeError(STR."Expected a number but found \{node.getType()}", node.getStart());
+        }
+        return value;
+    }
+
+    private IrInstruction lowerValue(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Number":
+                return emit(IrOp.CONST, IrType.LONG, Long.parseLong(node.getValue()), node.getStart());
+            case "Identifier":
+                return readVariable(node.getValue(), lookupAny(node), current);
+            case "Index": {
+                IrInstruction array = readArray(children.get(0));
+                IrInstruction index = lowerNumber(children.get(1));
+                return emit(IrOp.ARRAY_LOAD, IrType.LONG, 0, node.getStart(), array, index);
+            }
+            case "Expression":
+            case "Term": {
+                IrInstruction left = lowerNumber(children.get(0));
+                IrInstruction right = lowerNumber(children.get(2));
+                IrOp op;
+                switch (children.get(1).getValue()) {
+                    case "+" -> op = IrOp.ADD;
+                    case "-" -> op = IrOp.SUB;
+                    case "*" -> op = IrOp.MUL;
+                    case "/" -> op = IrOp.DIV;
+                    default -> throw new RuntimeError(STR."Unknown operator \{children.get(1).getValue()}",
+                            node.getStart());
+                }
+                return emit(op, IrType.LONG, 0, node.getStart(), left, right);
+            }
+            case "ArrayLiteral": {
+                IrInstruction[] elements = new IrInstruction[children.size()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = lowerNumber(children.get(i));
+                }
+                return emit(IrOp.ARRAY_NEW, IrType.ARRAY, 0, node.getStart(), elements);
+            }
+            case "Call":
+                throw new RuntimeError("Functions are not supported by the IR backend yet; use --run", node.getStart());
+            default:
+                throw new RuntimeError(STR."Expected a value but found \{node.getType()}", node.getStart());
+        }
+    }
+
+    private IrInstruction readArray(AST identifier) {
+        return readVariable(identifier.getValue(), lookup(identifier, IrType.ARRAY), current);
+    }
+
+    private void declare(AST identifier, IrType type) {
+        IrType existing = kinds.get(identifier.getValue());
+        if (existing != null && existing != type) {
+            throw new RuntimeError(STR."'\{identifier.getValue()}' is already declared as \{describe(existing)}",
+                    identifier.getStart());
+        }
+        kinds.put(identifier.getValue(), type);
+    }
+
+    private IrType lookup(AST identifier, IrType type) {
+        IrType existing = lookupAny(identifier);
+        if (existing != type) {
+            throw new RuntimeError(STR."'\{identifier.getValue()}' is \{describe(existing)}, not \{describe(type)}",
+                    identifier.getStart());
+        }
+        return existing;
+    }
+
+    private IrType lookupAny(AST identifier) {
+        IrType existing = kinds.get(identifier.getValue());
+        if (existing == null) {
+            throw new RuntimeError(STR."Undefined variable '\{identifier.getValue()}'", identifier.getStart());
+        }
+        return existing;
+    }
+
+    private static String describe(IrType type) {
+        return type == IrType.ARRAY ? "an array" : "a number";
+    }
+
+    private void writeVariable(String name, IrBlock block, IrInstruction value) {
+        currentDef.computeIfAbsent(name, k -> new HashMap<>()).put(block, value);
+    }
+
+    private IrInstruction readVariable(String name, IrType type, IrBlock block) {
+        IrInstruction value = currentDef.computeIfAbsent(name, k -> new HashMap<>()).get(block);
+        return value != null ? value : readVariableRecursive(name, type, block);
+    }
+
+    private IrInstruction readVariableRecursive(String name, IrType type, IrBlock block) {
+        IrInstruction value;
+        List<IrBlock> predecessors = block.getPredecessors();
+
+        if (!sealed.contains(block)) {
+            IrInstruction phi = newPhi(block, type);
+            incompletePhis.computeIfAbsent(block, k -> new LinkedHashMap<>()).put(name, phi);
+            value = phi;
+        } else if (predecessors.isEmpty()) {
+            // Declared on a path that did not run; the interpreter reads its zeroed slot.
+            value = function.newInstruction(IrOp.CONST, type, 0, 0, List.of());
+            function.getEntry().prepend(value);
+        } else if (predecessors.size() == 1) {
+            value = readVariable(name, type, predecessors.getFirst());
+        } else {
+            IrInstruction phi = newPhi(block, type);
+            writeVariable(name, block, phi);
+            addPhiOperands(name, type, phi);
+            value = phi;
+        }
+
+        writeVariable(name, block, value);
+        return value;
+    }
+
+    private IrInstruction newPhi(IrBlock block, IrType type) {
+        IrInstruction phi = function.newInstruction(IrOp.PHI, type, 0, 0, List.of());
+        block.addPhi(phi);
+        return phi;
+    }
+
+    private void addPhiOperands(String name, IrType type, IrInstruction phi) {
+        for (IrBlock predecessor : phi.getBlock().getPredecessors()) {
+            phi.getOperands().add(readVariable(name, type, predecessor));
+        }
+    }
+
+    private void seal(IrBlock block) {
+        Map<String, IrInstruction> pending = incompletePhis.remove(block);
+        if (pending != null) {
+            for (Map.Entry<String, IrInstruction> entry : pending.entrySet()) {
+                addPhiOperands(entry.getKey(), entry.getValue().getType(), entry.getValue());
+            }
+        }
+        sealed.add(block);
+    }
+
+    private IrInstruction emit(IrOp op, IrType type, long constant, int offset, IrInstruction... operands) {
+        IrInstruction instruction = function.newInstruction(op, type, constant, offset, List.of(operands));
+        current.append(instruction);
+        return instruction;
+    }
+
+    private void jump(IrBlock target) {
+        if (current.isTerminated()) {
+            return;
+        }
+        emit(IrOp.JUMP, IrType.VOID, 0, 0);
+        current.addSuccessor(target);
+    }
+
+    private void branch(IrInstruction condition, IrBlock ifTrue, IrBlock ifFalse) {
+        emit(IrOp.BRANCH, IrType.VOID, 0, condition.getOffset(), condition);
+        current.addSuccessor(ifTrue);
+        current.addSuccessor(ifFalse);
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A control-flow graph of {@link IrBlock}s in SSA form. Built from a program
+ * by {@link IrBuilder}, rewritten by {@link IrOptimizer} and lowered for
+ * execution by {@link IrBackend}.
+ */
+public class IrFunction {
+    private final List<IrBlock> blocks = new ArrayList<>();
+    private int nextInstructionId = 0;
+    private IrBlock entry;
+
+    IrBlock newBlock(String label) {
+        IrBlock block = new IrBlock(blocks.size(), label);
+        blocks.add(block);
+        if (entry == null) {
+            entry = block;
+        }
+        return block;
+    }
+
+    IrInstruction newInstruction(IrOp op, IrType type, long constant, int offset, List<IrInstruction> operands) {
+        return new IrInstruction(nextInstructionId++, op, type, constant, offset, operands);
+    }
+
+    public IrBlock getEntry() {
+        return entry;
+    }
+
+    public List<IrBlock> getBlocks() {
+        return blocks;
+    }
+
+    public int getInstructionCount() {
+        return nextInstructionId;
+    }
+
+    /**
+     * Blocks reachable from the entry, each listed before its successors
+     * except along back edges.
+     */
+    public List<IrBlock> reversePostorder() {
+        List<IrBlock> postorder = new ArrayList<>();
+        Set<IrBlock> visited = new HashSet<>();
+        List<IrBlock> stack = new ArrayList<>();
+        List<Integer> nextSuccessor = new ArrayList<>();
+
+        stack.add(entry);
+        nextSuccessor.add(0);
+        visited.add(entry);
+
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            IrBlock block = stack.get(top);
+            int next = nextSuccessor.get(top);
+
+            if (next < block.getSuccessors().size()) {
+                nextSuccessor.set(top, next + 1);
+                IrBlock successor = block.getSuccessors().get(next);
+                if (visited.add(successor)) {
+                    stack.add(successor);
+                    nextSuccessor.add(0);
+                }
+            } else {
+                postorder.add(block);
+                stack.removeLast();
+                nextSuccessor.removeLast();
+            }
+        }
+
+        return postorder.reversed();
+    }
+
+    /**
+     * Immediate dominators of every reachable block, using the iterative
+     * algorithm of Cooper, Harvey and Kennedy. The entry maps to itself.
+     */
+    public Map<IrBlock, IrBlock> immediateDominators() {
+        List<IrBlock> order = reversePostorder();
+        Map<IrBlock, Integer> position = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            position.put(order.get(i), i);
+        }
+
+        Map<IrBlock, IrBlock> idom = new HashMap<>();
+        idom.put(entry, entry);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (IrBlock block : order) {
+                if (block == entry) {
+                    continue;
+                }
+
+                IrBlock newIdom = null;
+                for (IrBlock predecessor : block.getPredecessors()) {
+                    if (!idom.containsKey(predecessor)) {
+                        continue;
+                    }
+                    newIdom = newIdom == null ? predecessor : intersect(predecessor, newIdom, idom, position);
+                }
+
+                if (newIdom != null && idom.get(block) != newIdom) {
+                    idom.put(block, newIdom);
+                    changed = true;
+                }
+            }
+        }
+
+        return idom;
+    }
+
+    private static IrBlock intersect(IrBlock a, IrBlock b, Map<IrBlock, IrBlock> idom, Map<IrBlock, Integer> position) {
+        while (a != b) {
+            while (position.get(a) > position.get(b)) {
+                a = idom.get(a);
+            }
+            while (position.get(b) > position.get(a)) {
+                b = idom.get(b);
+            }
+        }
+        return a;
+    }
+
+    public static boolean dominates(IrBlock a, IrBlock b, Map<IrBlock, IrBlock> idom) {
+        IrBlock current = b;
+        while (true) {
+            if (current == a) {
+                return true;
+            }
+            IrBlock parent = idom.get(current);
+            if (parent == null || parent == current) {
+                return false;
+            }
+            current = parent;
+        }
+    }
+
+    /**
+     * Redirects every use of a key in {@code replacements} to its value,
+     * following chains, and deletes the replaced instructions.
+     */
+    void replaceAll(Map<IrInstruction, IrInstruction> replacements) {
+        if (replacements.isEmpty()) {
+            return;
+        }
+
+        for (IrBlock block : blocks) {
+            block.getPhis().removeIf(replacements::containsKey);
+            block.getInstructions().removeIf(replacements::containsKey);
+
+            for (IrInstruction phi : block.getPhis()) {
+                resolveOperands(phi, replacements);
+            }
+            for (IrInstruction instruction : block.getInstructions()) {
+                resolveOperands(instruction, replacements);
+            }
+        }
+    }
+
+    private static void resolveOperands(IrInstruction instruction, Map<IrInstruction, IrInstruction> replacements) {
+        List<IrInstruction> operands = instruction.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, resolve(operands.get(i), replacements));
+        }
+    }
+
+    static IrInstruction resolve(IrInstruction value, Map<IrInstruction, IrInstruction> replacements) {
+        IrInstruction replacement;
+        while ((replacement = replacements.get(value)) != null) {
+            value = replacement;
+        }
+        return value;
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (IrBlock block : reversePostorder()) {
+            block.dump(sb);
+        }
+        return sb.toString();
+    }
+}
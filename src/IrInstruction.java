@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One SSA value or side effect in an {@link IrBlock}. An instruction is its
+ * own result: operands refer directly to the instructions that define them.
+ * Phi operands line up with the predecessors of the phi's block.
+ */
+public class IrInstruction {
+    private final int id;
+    private IrOp op;
+    private final IrType type;
+    private final List<IrInstruction> operands;
+    private long constant;
+    private final int offset;
+    private IrBlock block;
+
+    IrInstruction(int id, IrOp op, IrType type, long constant, int offset, List<IrInstruction> operands) {
+        this.id = id;
+        this.op = op;
+        this.type = type;
+        this.constant = constant;
+        this.offset = offset;
+        this.operands = new ArrayList<>(operands);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public IrOp getOp() {
+        return op;
+    }
+
+    public IrType getType() {
+        return type;
+    }
+
+    public List<IrInstruction> getOperands() {
+        return operands;
+    }
+
+    public IrInstruction getOperand(int index) {
+        return operands.get(index);
+    }
+
+    public long getConstant() {
+        return constant;
+    }
+
+    /**
+     * Source offset of the node this came from, for runtime errors.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public IrBlock getBlock() {
+        return block;
+    }
+
+    void setBlock(IrBlock block) {
+        this.block = block;
+    }
+
+    /**
+     * Rewrites this instruction in place, keeping its identity so existing
+     * uses see the new operation.
+     */
+    void rewrite(IrOp op, long constant, List<IrInstruction> operands) {
+        this.op = op;
+        this.constant = constant;
+        this.operands.clear();
+        this.operands.addAll(operands);
+    }
+
+    public boolean isConstant() {
+        return op == IrOp.CONST;
+    }
+
+    public String name() {
+        return STR."v\{id}";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (type != IrType.VOID) {
+            sb.append(name()).append(':').append(type.name().toLowerCase()).append(" = ");
+        }
+        sb.append(op.name().toLowerCase());
+
+        if (op == IrOp.CONST) {
+            sb.append(' ').append(type == IrType.ARRAY ? "null" : String.valueOf(constant));
+        }
+
+        for (int i = 0; i < operands.size(); i++) {
+            sb.append(i == 0 ? " " : ", ");
+            if (op == IrOp.PHI) {
+                sb.append('[').append(block.getPredecessors().get(i).name()).append(": ");
+                sb.append(operands.get(i).name()).append(']');
+            } else {
+                sb.append(operands.get(i).name());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * The operations an {@link IrInstruction} can perform.
+ */
+enum IrOp {
+    CONST,          // constant; arrays use it for null
+    PHI,
+    COPY,
+
+    ADD,
+    SUB,
+    MUL,
+    DIV,
+    SHL,            // left shift, from strength reduction
+
+    EQ,
+    NE,
+    LT,
+    GT,
+    LE,
+    GE,
+
+    ARRAY_NEW,      // operands are the elements
+    ARRAY_LOAD,     // array, index
+    ARRAY_STORE,    // array, index, value
+    CHECK_INDEX,    // array, index; traps like ARRAY_STORE would, before its value is computed
+
+    PRINT,
+    PRINT_ARRAY,
+
+    JUMP,
+    BRANCH,         // condition; successors are (true, false)
+    RETURN;
+
+    /**
+     * Whether the value depends only on the operands, so two instructions with
+     * the same operands always agree and an unused one can be deleted.
+     */
+    public boolean isPure() {
+        switch (this) {
+            case CONST, COPY, ADD, SUB, MUL, DIV, SHL, EQ, NE, LT, GT, LE, GE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean isCommutative() {
+        return this == ADD || this == MUL || this == EQ || this == NE;
+    }
+
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == RETURN;
+    }
+}
@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimization passes over an {@link IrFunction}. Every pass keeps the
+ * program's output and runtime errors unchanged: in particular a division
+ * that might trap is never hoisted or deleted.
+ */
+public class IrOptimizer {
+
+    public static void optimize(IrFunction function) {
+        propagateCopies(function);
+        reduceStrength(function);
+        numberValues(function);
+        hoistLoopInvariants(function);
+        numberValues(function);
+        propagateCopies(function);
+        eliminateDeadCode(function);
+    }
+
+    /**
+     * Replaces copies with their source and removes phis whose operands are
+     * all the same value (or the phi itself), repeating until none are left.
+     */
+    public static void propagateCopies(IrFunction function) {
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (IrBlock block : function.getBlocks()) {
+                for (IrInstruction phi : block.getPhis()) {
+                    if (replacements.containsKey(phi)) {
+                        continue;
+                    }
+
+                    IrInstruction same = null;
+                    boolean trivial = true;
+                    for (IrInstruction operand : phi.getOperands()) {
+                        IrInstruction value = IrFunction.resolve(operand, replacements);
+                        if (value == phi || value == same) {
+                            continue;
+                        }
+                        if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = value;
+                    }
+
+                    if (trivial && same != null) {
+                        replacements.put(phi, same);
+                        changed = true;
+                    }
+                }
+
+                for (IrInstruction instruction : block.getInstructions()) {
+                    if (instruction.getOp() == IrOp.COPY && !replacements.containsKey(instruction)) {
+                        replacements.put(instruction, instruction.getOperand(0));
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        function.replaceAll(replacements);
+    }
+
+    /**
+     * Rewrites multiplications by powers of two as shifts and drops
+     * arithmetic identities such as {@code x * 1} and {@code x + 0}.
+     */
+    public static void reduceStrength(IrFunction function) {
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : new ArrayList<>(block.getInstructions())) {
+                List<IrInstruction> operands = instruction.getOperands();
+
+                switch (instruction.getOp()) {
+                    case MUL: {
+                        int constantSide = instruction.getOperand(1).isConstant() ? 1
+                                : instruction.getOperand(0).isConstant() ? 0 : -1;
+                        if (constantSide == -1) {
+                            break;
+                        }
+
+                        long factor = instruction.getOperand(constantSide).getConstant();
+                        IrInstruction other = instruction.getOperand(1 - constantSide);
+
+                        if (factor == 1) {
+                            replacements.put(instruction, other);
+                        } else if (factor == 0) {
+                            instruction.rewrite(IrOp.CONST, 0, List.of());
+                        } else if (factor > 0 && Long.bitCount(factor) == 1) {
+                            IrInstruction shift = function.newInstruction(IrOp.CONST, IrType.LONG,
+                                    Long.numberOfTrailingZeros(factor), instruction.getOffset(), List.of());
+                            block.insertBefore(instruction, shift);
+                            instruction.rewrite(IrOp.SHL, 0, List.of(other, shift));
+                        }
+                        break;
+                    }
+                    case ADD:
+                        if (isConstant(operands.get(1), 0)) {
+                            replacements.put(instruction, operands.get(0));
+                        } else if (isConstant(operands.get(0), 0)) {
+                            replacements.put(instruction, operands.get(1));
+                        }
+                        break;
+                    case SUB:
+                    case SHL:
+                        if (isConstant(operands.get(1), 0)) {
+                            replacements.put(instruction, operands.get(0));
+                        }
+                        break;
+                    case DIV:
+                        if (isConstant(operands.get(1), 1)) {
+                            replacements.put(instruction, operands.get(0));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        function.replaceAll(replacements);
+    }
+
+    /**
+     * Global value numbering over the dominator tree: a pure instruction that
+     * recomputes a value already available in a dominating block is replaced
+     * by it, and operations on constants are folded.
+     */
+    public static void numberValues(IrFunction function) {
+        Map<IrBlock, IrBlock> idom = function.immediateDominators();
+        Map<IrBlock, List<IrBlock>> children = new HashMap<>();
+        for (IrBlock block : function.reversePostorder()) {
+            IrBlock parent = idom.get(block);
+            if (parent != null && parent != block) {
+                children.computeIfAbsent(parent, k -> new ArrayList<>()).add(block);
+            }
+        }
+
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+        numberValues(function.getEntry(), children, new HashMap<>(), replacements);
+        function.replaceAll(replacements);
+    }
+
+    private static void numberValues(IrBlock block, Map<IrBlock, List<IrBlock>> children,
+                                     Map<ValueKey, IrInstruction> available,
+                                     Map<IrInstruction, IrInstruction> replacements) {
+        List<ValueKey> added = new ArrayList<>();
+
+        for (IrInstruction phi : block.getPhis()) {
+            resolveOperands(phi, replacements);
+        }
+
+        for (IrInstruction instruction : block.getInstructions()) {
+            resolveOperands(instruction, replacements);
+            if (!instruction.getOp().isPure() || instruction.getOp() == IrOp.COPY) {
+                continue;
+            }
+
+            fold(instruction);
+
+            ValueKey key = ValueKey.of(instruction);
+            IrInstruction existing = available.get(key);
+            if (existing != null) {
+                replacements.put(instruction, existing);
+            } else {
+                available.put(key, instruction);
+                added.add(key);
+            }
+        }
+
+        for (IrBlock child : children.getOrDefault(block, List.of())) {
+            numberValues(child, children, available, replacements);
+        }
+
+        for (ValueKey key : added) {
+            available.remove(key);
+        }
+    }
+
+    private static void resolveOperands(IrInstruction instruction, Map<IrInstruction, IrInstruction> replacements) {
+        List<IrInstruction> operands = instruction.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            operands.set(i, IrFunction.resolve(operands.get(i), replacements));
+        }
+    }
+
+    private static void fold(IrInstruction instruction) {
+        List<IrInstruction> operands = instruction.getOperands();
+        if (operands.size() != 2 || !operands.get(0).isConstant() || !operands.get(1).isConstant()) {
+            return;
+        }
+
+        long a = operands.get(0).getConstant();
+        long b = operands.get(1).getConstant();
+        long result;
+
+        switch (instruction.getOp()) {
+            case ADD -> result = a + b;
+            case SUB -> result = a - b;
+            case MUL -> result = a * b;
+            case SHL -> result = a << b;
+            case EQ -> result = a == b ? 1 : 0;
+            case NE -> result = a != b ? 1 : 0;
+            case LT -> result = a < b ? 1 : 0;
+            case GT -> result = a > b ? 1 : 0;
+            case LE -> result = a <= b ? 1 : 0;
+            case GE -> result = a >= b ? 1 : 0;
+            case DIV -> {
+                if (b == 0) {
+                    return;
+                }
+                result = a / b;
+            }
+            default -> {
+                return;
+            }
+        }
+
+        instruction.rewrite(IrOp.CONST, result, List.of());
+    }
+
+    /**
+     * Moves pure, non-trapping instructions whose operands are all defined
+     * outside a loop into that loop's preheader. Inner loops are handled
+     * first so code can move out through several levels.
+     */
+    public static void hoistLoopInvariants(IrFunction function) {
+        Map<IrBlock, IrBlock> idom = function.immediateDominators();
+        List<IrBlock> order = function.reversePostorder();
+        List<Set<IrBlock>> loops = new ArrayList<>();
+        List<IrBlock> headers = new ArrayList<>();
+
+        for (IrBlock header : order) {
+            Set<IrBlock> body = new LinkedHashSet<>();
+            for (IrBlock latch : header.getPredecessors()) {
+                if (idom.containsKey(latch) && IrFunction.dominates(header, latch, idom)) {
+                    collectLoop(header, latch, body);
+                }
+            }
+            if (!body.isEmpty()) {
+                loops.add(body);
+                headers.add(header);
+            }
+        }
+
+        List<Integer> innermostFirst = new ArrayList<>();
+        for (int i = 0; i < loops.size(); i++) {
+            innermostFirst.add(i);
+        }
+        innermostFirst.sort(Comparator.comparingInt(i -> loops.get(i).size()));
+
+        for (int i : innermostFirst) {
+            IrBlock preheader = preheaderOf(headers.get(i), loops.get(i));
+            if (preheader != null) {
+                hoist(loops.get(i), preheader, order);
+            }
+        }
+    }
+
+    private static void collectLoop(IrBlock header, IrBlock latch, Set<IrBlock> body) {
+        body.add(header);
+        List<IrBlock> worklist = new ArrayList<>();
+        if (body.add(latch)) {
+            worklist.add(latch);
+        }
+
+        while (!worklist.isEmpty()) {
+            IrBlock block = worklist.removeLast();
+            for (IrBlock predecessor : block.getPredecessors()) {
+                if (body.add(predecessor)) {
+                    worklist.add(predecessor);
+                }
+            }
+        }
+    }
+
+    private static IrBlock preheaderOf(IrBlock header, Set<IrBlock> body) {
+        IrBlock preheader = null;
+        for (IrBlock predecessor : header.getPredecessors()) {
+            if (!body.contains(predecessor)) {
+                if (preheader != null) {
+                    return null;
+                }
+                preheader = predecessor;
+            }
+        }
+        return preheader != null && preheader.getSuccessors().size() == 1 ? preheader : null;
+    }
+
+    private static void hoist(Set<IrBlock> body, IrBlock preheader, List<IrBlock> order) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (IrBlock block : order) {
+                if (!body.contains(block)) {
+                    continue;
+                }
+
+                for (IrInstruction instruction : new ArrayList<>(block.getInstructions())) {
+                    if (!isHoistable(instruction)) {
+                        continue;
+                    }
+
+                    boolean invariant = true;
+                    for (IrInstruction operand : instruction.getOperands()) {
+                        if (body.contains(operand.getBlock())) {
+                            invariant = false;
+                            break;
+                        }
+                    }
+
+                    if (invariant) {
+                        block.getInstructions().remove(instruction);
+                        preheader.insertBeforeTerminator(instruction);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isHoistable(IrInstruction instruction) {
+        IrOp op = instruction.getOp();
+        return op.isPure() && op != IrOp.COPY && !mayTrap(instruction);
+    }
+
+    /**
+     * Deletes pure instructions and phis whose results are never used.
+     */
+    public static void eliminateDeadCode(IrFunction function) {
+        boolean changed = true;
+        while (changed) {
+            Set<IrInstruction> used = new HashSet<>();
+            for (IrBlock block : function.getBlocks()) {
+                for (IrInstruction phi : block.getPhis()) {
+                    used.addAll(phi.getOperands());
+                }
+                for (IrInstruction instruction : block.getInstructions()) {
+                    used.addAll(instruction.getOperands());
+                }
+            }
+
+            changed = false;
+            for (IrBlock block : function.getBlocks()) {
+                changed |= block.getPhis().removeIf(phi -> !used.contains(phi));
+                changed |= block.getInstructions().removeIf(instruction -> !used.contains(instruction)
+                        && instruction.getOp().isPure() && !mayTrap(instruction));
+            }
+        }
+    }
+
+    private static boolean mayTrap(IrInstruction instruction) {
+        return instruction.getOp() == IrOp.DIV && !(instruction.getOperand(1).isConstant()
+                && instruction.getOperand(1).getConstant() != 0);
+    }
+
+    private static boolean isConstant(IrInstruction instruction, long value) {
+        return instruction.isConstant() && instruction.getType() == IrType.LONG && instruction.getConstant() == value;
+    }
+
+    private record ValueKey(IrOp op, IrType type, long constant, List<Integer> operands) {
+        static ValueKey of(IrInstruction instruction) {
+            List<Integer> operands = new ArrayList<>();
+            for (IrInstruction operand : instruction.getOperands()) {
+                operands.add(operand.getId());
+            }
+            if (instruction.getOp().isCommutative()) {
+                operands.sort(null);
+            }
+            return new ValueKey(instruction.getOp(), instruction.getType(), instruction.getConstant(), operands);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * The kind of value an {@link IrInstruction} produces.
+ */
+enum IrType {
+    LONG,
+    ARRAY,
+    VOID
+}
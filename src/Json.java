@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader/writer for the language server. Objects map to
+ * {@link Map}, arrays to {@link List}, integral numbers to {@link Long} and
+ * everything else to the obvious Java type.
+ */
+public class Json {
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+        this.position = 0;
+    }
+
+    public static Object parse(String text) {
+        Json json = new Json(text);
+        json.skipWhitespace();
+        Object value = json.readValue();
+        json.skipWhitespace();
+        if (json.position != text.length()) {
+            throw json.error("Trailing characters");
+        }
+        return value;
+    }
+
+    public static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(value, sb);
+        return sb.toString();
+    }
+
+    private Object readValue() {
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            if (peek() != ':') {
+                throw error("Expected ':'");
+            }
+            position++;
+            skipWhitespace();
+            object.put(key, readValue());
+            skipWhitespace();
+
+            char c = peek();
+            position++;
+            if (c == '}') {
+                return object;
+            } else if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+
+        while (true) {
+            skipWhitespace();
+            array.add(readValue());
+            skipWhitespace();
+
+            char c = peek();
+            position++;
+            if (c == ']') {
+                return array;
+            } else if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() {
+        if (peek() != '"') {
+            throw error("Expected string");
+        }
+        position++;
+
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return sb.toString();
+            } else if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (position + 4 > text.length()) {
+                        throw error("Truncated \\u escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text, position, position + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid \\u escape");
+                    }
+                    position += 4;
+                }
+                default -> sb.append(escaped);
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean integral = true;
+
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            position++;
+        }
+
+        if (start == position) {
+            throw error(STR."Unexpected character '\{text.charAt(position)}'");
+        }
+
+        String number = text.substring(start, position);
+        try {
+            return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error(STR."Invalid number '\{number}'");
+        }
+    }
+
+    private void expect(String literal) {
+        if (!text.startsWith(literal, position)) {
+            throw error(STR."Expected '\{literal}'");
+        }
+        position += literal.length();
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        return text.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(STR."\{message} at offset \{position}");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(Object value, StringBuilder sb) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String s) {
+            writeString(s, sb);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) map).entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                writeString(entry.getKey(), sb);
+                sb.append(':');
+                write(entry.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof List<?> list) {
+            sb.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) sb.append(',');
+                write(list.get(i), sb);
+            }
+            sb.append(']');
+        } else {
+            writeString(value.toString(), sb);
+        }
+    }
+
+    private static void writeString(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -1,21 +1,34 @@
-import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Lexer {
     private final ArrayList<Token> tokens;
+    private final Interner interner;
+    private LineIndex lineIndex = new LineIndex();
+    private boolean debugOutput = true;
+    // Where finished batches go during a pipelined update, or null while collecting into tokens.
+    private TokenRing ring;
     private static final Map<String, TokenType> KEYWORDS = new HashMap<>();
     private static final Map<String, TokenType> SPECIAL_CHARS = new HashMap<>();
 
+    // Character classes for ASCII; everything else is OTHER and becomes part of a word.
+    private static final byte OTHER = 0;
+    private static final byte BLANK = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte SINGLE = 3;
+    private static final byte OPERATOR = 4;
+    private static final byte IDENTIFIER = 5;
+    private static final byte[] CHAR_CLASS = new byte[128];
+
     static {
         KEYWORDS.put("let", TokenType.LET);
         KEYWORDS.put("if", TokenType.IF);
         KEYWORDS.put("else", TokenType.ELSE);
         KEYWORDS.put("while", TokenType.WHILE);
         KEYWORDS.put("print", TokenType.PRINT);
+        KEYWORDS.put("fn", TokenType.FN);
+        KEYWORDS.put("return", TokenType.RETURN);
 
         SPECIAL_CHARS.put("(", TokenType.LEFT_PAREN);
         SPECIAL_CHARS.put(")", TokenType.RIGHT_PAREN);
@@ -24,6 +37,7 @@ public class Lexer {
         SPECIAL_CHARS.put("[", TokenType.LEFT_BRACKET);
         SPECIAL_CHARS.put("]", TokenType.RIGHT_BRACKET);
         SPECIAL_CHARS.put(";", TokenType.SEMICOLON);
+        SPECIAL_CHARS.put(",", TokenType.COMMA);
 
         SPECIAL_CHARS.put("=", TokenType.ASSIGN);
         SPECIAL_CHARS.put("+", TokenType.PLUS);
@@ -36,105 +50,227 @@ public class Lexer {
         SPECIAL_CHARS.put(">=", TokenType.GREATER_EQUAL);
         SPECIAL_CHARS.put("<", TokenType.LESS);
         SPECIAL_CHARS.put("<=", TokenType.LESS_EQUAL);
+
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = IDENTIFIER;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = IDENTIFIER;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = IDENTIFIER;
+        CHAR_CLASS['_'] = IDENTIFIER;
+        CHAR_CLASS[' '] = BLANK;
+        CHAR_CLASS['\t'] = BLANK;
+        CHAR_CLASS['\r'] = BLANK;
+        CHAR_CLASS['\n'] = NEWLINE;
+        for (char c : "(){};[],".toCharArray()) CHAR_CLASS[c] = SINGLE;
+        for (char c : "=<>!+-*/".toCharArray()) CHAR_CLASS[c] = OPERATOR;
     }
 
     public Lexer() {
+        this(null);
+    }
+
+    /**
+     * Creates a lexer whose identifier and keyword token values are pooled in
+     * {@code interner}, which may be shared with other lexers.
+     */
+    public Lexer(Interner interner) {
         tokens = new ArrayList<>();
+        this.interner = interner;
+    }
+
+    public void setDebugOutput(boolean debugOutput) {
+        this.debugOutput = debugOutput;
     }
 
-    public void updateWithString(String input) throws IOException {
+    public void updateWithString(String input) {
+        update(input);
+    }
+
+    /**
+     * Lexes any character sequence in place, such as a {@link DocumentText}
+     * view of the editor buffer, without first copying it into a String.
+     */
+    public void update(CharSequence input) {
         tokens.clear();
+        lineIndex = new LineIndex();
 
         if (input == null || input.isEmpty()) {
             return;
         }
 
-        parse(new StringReader(input));
-        System.out.println(tokens);
+        parse(input);
+        if (debugOutput) {
+            System.out.println(tokens);
+        }
+    }
+
+    /**
+     * Lexes {@code input} on the calling thread and publishes the tokens to
+     * {@code ring} in batches as they are found, then closes it. Meant to run
+     * on its own thread while a {@link Parser} takes from the other end.
+     * Failures are passed to the consumer through {@link TokenRing#fail}
+     * rather than thrown. {@link #getTokens()} is empty afterwards, and
+     * {@link #getLineIndex()} is complete once the consumer has seen the end
+     * of the ring.
+     */
+    public void update(CharSequence input, TokenRing ring) {
+        tokens.clear();
+        lineIndex = new LineIndex();
+        this.ring = ring;
+
+        try {
+            if (input != null) {
+                parse(input);
+            }
+            publishBatch();
+            ring.close();
+        } catch (RuntimeException | Error e) {
+            ring.fail(e);
+        } finally {
+            tokens.clear();
+            this.ring = null;
+        }
+    }
+
+    private void publishBatch() {
+        if (!tokens.isEmpty()) {
+            ring.put(tokens.toArray(new Token[0]));
+            tokens.clear();
+        }
     }
 
-    private void parse(Reader reader) throws IOException {
-        int currentChar;
-        StringBuilder tokenText = new StringBuilder();
+    private void parse(CharSequence input) {
+        int length = input.length();
+        int tokenStart = -1;
         int position = 0;
 
-        while ((currentChar = reader.read()) != -1) {
-            char c = (char) currentChar;
+        while (position < length) {
+            char c = input.charAt(position);
 
-            if (c == ' ' || c == '\n' || c == '\r') {
-                if (!tokenText.isEmpty()) {
-                    addToken(tokenText.toString(), position - tokenText.length());
-                    tokenText.setLength(0);
-                }
-            } else if ("(){};[]".indexOf(c) != -1) {
-                if (!tokenText.isEmpty()) {
-                    addToken(tokenText.toString(), position - tokenText.length());
-                    tokenText.setLength(0);
-                }
-                addToken(String.valueOf(c), position);
-            } else if ("=<>!+-*/".indexOf(c) != -1) {
-                if (!tokenText.isEmpty()) {
-                    addToken(tokenText.toString(), position - tokenText.length());
-                    tokenText.setLength(0);
-                }
+            switch (classOf(c)) {
+                case BLANK:
+                    tokenStart = flushToken(input, tokenStart, position);
+                    position = blankEnd(input, position + 1, length);
+                    break;
+                case NEWLINE:
+                    tokenStart = flushToken(input, tokenStart, position);
+                    lineIndex.addLineStart(position + 1);
+                    position++;
+                    break;
+                case SINGLE:
+                    tokenStart = flushToken(input, tokenStart, position);
+                    addToken(String.valueOf(c), position);
+                    position++;
+                    break;
+                case OPERATOR: {
+                    tokenStart = flushToken(input, tokenStart, position);
 
-                tokenText.append(c);
-                reader.mark(1);
-                int nextChar = reader.read();
-
-                if (nextChar != -1) {
-                    char nc = (char) nextChar;
-                    if ((c == '=' && nc == '=') ||
-                            (c == '>' && nc == '=') ||
-                            (c == '<' && nc == '=') ||
-                            (c == '!' && nc == '=')) {
-                        tokenText.append(nc);
-                        position++;
-                    } else {
-                        reader.reset();
+                    int end = position + 1;
+                    if (end < length && input.charAt(end) == '=' &&
+                            (c == '=' || c == '>' || c == '<' || c == '!')) {
+                        end++;
                     }
-                } else {
-                    reader.reset();
-                }
 
-                addToken(tokenText.toString(), position - tokenText.length() + 1);
-                tokenText.setLength(0);
-            } else {
-                tokenText.append(c);
+                    addToken(input.subSequence(position, end).toString(), position);
+                    position = end;
+                    break;
+                }
+                case IDENTIFIER:
+                    if (tokenStart == -1) {
+                        tokenStart = position;
+                    }
+                    position = identifierEnd(input, position + 1, length);
+                    break;
+                default:
+                    // Any other character continues the current word.
+                    if (tokenStart == -1) {
+                        tokenStart = position;
+                    }
+                    position++;
+                    break;
             }
-            position++;
         }
 
-        if (!tokenText.isEmpty()) {
-            addToken(tokenText.toString(), position - tokenText.length());
+        flushToken(input, tokenStart, length);
+    }
+
+    private static byte classOf(char c) {
+        return c < CHAR_CLASS.length ? CHAR_CLASS[c] : OTHER;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return classOf(c) == IDENTIFIER;
+    }
+
+    private static boolean isBlank(char c) {
+        return classOf(c) == BLANK;
+    }
+
+    private static int identifierEnd(CharSequence input, int from, int to) {
+        while (from < to && isIdentifierChar(input.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int blankEnd(CharSequence input, int from, int to) {
+        while (from < to && isBlank(input.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int flushToken(CharSequence input, int start, int end) {
+        if (start != -1) {
+            addToken(input.subSequence(start, end).toString(), start);
         }
+        return -1;
     }
 
     private void addToken(String tokenValue, int position) {
         TokenType type;
 
-        if (KEYWORDS.containsKey(tokenValue.toLowerCase())) {
-            type = KEYWORDS.get(tokenValue.toLowerCase());
+        TokenType keyword = KEYWORDS.get(tokenValue.toLowerCase());
+        if (keyword != null) {
+            type = keyword;
         }
         else if (SPECIAL_CHARS.containsKey(tokenValue)) {
             type = SPECIAL_CHARS.get(tokenValue);
         }
+        else if (isDigits(tokenValue)) {
+            type = TokenType.NUMBER;
+        }
         else {
-            try {
-                Integer.parseInt(tokenValue);
-                type = TokenType.NUMBER;
-            } catch (NumberFormatException e) {
-                type = TokenType.IDENTIFIER;
+            type = TokenType.IDENTIFIER;
+        }
+
+        if (interner != null && type != TokenType.NUMBER) {
+            tokenValue = interner.intern(tokenValue);
+        }
+
+        tokens.add(new Token(type, tokenValue, position, position + tokenValue.length()));
+        if (ring != null && tokens.size() == ring.batchSize()) {
+            publishBatch();
+        }
+    }
+
+    // Range checking is left to the parser so oversized literals get a proper error instead of becoming identifiers.
+    private static boolean isDigits(String tokenValue) {
+        for (int i = 0; i < tokenValue.length(); i++) {
+            char c = tokenValue.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
             }
         }
+        return true;
+    }
 
-        tokens.add(new Token(type, tokenValue, position, position + tokenValue.length() - 1));
+    public LineIndex getLineIndex() {
+        return lineIndex;
     }
 
     public ArrayList<Token> getTokens() {
         return tokens;
     }
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) {
     }
 }
\ No newline at end of file
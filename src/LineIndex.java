@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * Sorted table of the offsets at which each line starts. Tokens and tree
+ * nodes only carry character offsets; this turns an offset into a zero-based
+ * (line, column) pair with a binary search instead of rescanning the text.
+ */
+public class LineIndex {
+    private int[] lineStarts;
+    private int lineCount;
+
+    public LineIndex() {
+        lineStarts = new int[16];
+        lineCount = 1;
+    }
+
+    public static LineIndex of(CharSequence text) {
+        LineIndex index = new LineIndex();
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                index.addLineStart(i + 1);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Appends the start of the next line. Offsets must be added in
+     * increasing order, as the lexer does while it scans.
+     */
+    void addLineStart(int offset) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        }
+        lineStarts[lineCount++] = offset;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    public int lineOf(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public int columnOf(int offset) {
+        return offset - lineStarts[lineOf(offset)];
+    }
+
+    /**
+     * Updates the index for {@code removedLength} characters at
+     * {@code offset} being replaced by {@code inserted}, without looking at
+     * the rest of the text.
+     */
+    public void applyEdit(int offset, int removedLength, CharSequence inserted) {
+        int removedEnd = offset + removedLength;
+        int delta = inserted.length() - removedLength;
+
+        int insertedLines = 0;
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n') insertedLines++;
+        }
+
+        // Lines up to and including the one holding the edit keep their start.
+        int keep = lineOf(offset) + 1;
+        int tail = keep;
+        while (tail < lineCount && lineStarts[tail] <= removedEnd) {
+            tail++;
+        }
+
+        int[] updated = new int[Math.max(16, keep + insertedLines + lineCount - tail)];
+        System.arraycopy(lineStarts, 0, updated, 0, keep);
+
+        int count = keep;
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n') updated[count++] = offset + i + 1;
+        }
+        for (int i = tail; i < lineCount; i++) {
+            updated[count++] = lineStarts[i] + delta;
+        }
+
+        lineStarts = updated;
+        lineCount = count;
+    }
+}
@@ -0,0 +1,588 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Language Server Protocol front end over stdio. Documents are synced
+ * incrementally, analysis runs on a small bounded pool, and only documents
+ * that actually changed are re-lexed and re-parsed.
+ */
+public class LspServer {
+    private static final int WORKER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int WORKER_QUEUE_CAPACITY = 64;
+
+    private static final int SYNC_INCREMENTAL = 2;
+    private static final int SYMBOL_KIND_FUNCTION = 12;
+    private static final int SYMBOL_KIND_VARIABLE = 13;
+    private static final int SEVERITY_ERROR = 1;
+    private static final int MESSAGE_TYPE_ERROR = 1;
+
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+    private static final int INTERNAL_ERROR = -32603;
+    private static final int SERVER_CANCELLED = -32802;
+    private static final int REQUEST_CANCELLED = -32800;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, TextDocument> documents = new ConcurrentHashMap<>();
+    private final Map<String, Future<?>> pendingAnalyses = new ConcurrentHashMap<>();
+    private final Map<String, Analysis> analyses = new ConcurrentHashMap<>();
+    private final Map<Object, Future<?>> pendingRequests = new ConcurrentHashMap<>();
+    // Documents whose analysis found the queue full, retried as workers free up.
+    private final Set<String> deferredAnalyses = ConcurrentHashMap.newKeySet();
+    private boolean shutdownRequested = false;
+
+    public LspServer(InputStream in, OutputStream out) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        this.workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY), rejectionHandler());
+    }
+
+    /**
+     * Never runs work on the reader thread, which has to stay free to see
+     * {@code $/cancelRequest}. A rejected request is answered as cancelled by
+     * the server, and a rejected analysis is retried once a worker is free.
+     */
+    private RejectedExecutionHandler rejectionHandler() {
+        return (task, executor) -> {
+            if (task instanceof RequestTask request) {
+                if (pendingRequests.remove(request.id, request)) {
+                    sendError(request.id, SERVER_CANCELLED, "Server is busy");
+                }
+            } else if (task instanceof AnalysisTask analysis && !executor.isShutdown()) {
+                deferredAnalyses.add(analysis.document.getUri());
+            }
+            ((Future<?>) task).cancel(false);
+        };
+    }
+
+    /**
+     * Serves requests until the client sends {@code exit} or closes the
+     * stream. Returns the process exit code the protocol asks for.
+     */
+    public int run() throws IOException {
+        try {
+            String message;
+            while ((message = readMessage()) != null) {
+                Object json;
+                try {
+                    json = Json.parse(message);
+                } catch (IllegalArgumentException e) {
+                    sendError(null, PARSE_ERROR, e.getMessage());
+                    continue;
+                }
+
+                if (!(json instanceof Map<?, ?> map)) {
+                    sendError(null, INVALID_REQUEST, "Expected a request or notification object");
+                    continue;
+                }
+                if (!(map.get("method") instanceof String method)) {
+                    // Responses have no method either, but this server never sends requests to the client.
+                    if (!map.containsKey("result") && !map.containsKey("error")) {
+                        sendError(map.get("id"), INVALID_REQUEST, "Missing method");
+                    }
+                    continue;
+                }
+                if (method.equals("exit")) {
+                    return shutdownRequested ? 0 : 1;
+                }
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> request = (Map<String, Object>) map;
+                try {
+                    dispatch(method, request);
+                } catch (NullPointerException | ClassCastException | IllegalArgumentException e) {
+                    // Missing or mistyped params; notifications have nobody to tell.
+                    Object id = request.get("id");
+                    if (id != null) {
+                        sendError(id, INVALID_PARAMS, STR."Invalid params for \{method}");
+                    } else {
+                        logError(STR."Ignored \{method} with invalid params: \{e}");
+                    }
+                }
+            }
+            return 1;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(String method, Map<String, Object> message) {
+        Object id = message.get("id");
+        Map<String, Object> params = (Map<String, Object>) message.get("params");
+
+        if (shutdownRequested) {
+            if (id != null) {
+                sendError(id, INVALID_REQUEST, "Server is shutting down");
+            }
+            return;
+        }
+
+        switch (method) {
+            case "initialize":
+                sendResult(id, initializeResult());
+                break;
+            case "initialized":
+                break;
+            case "shutdown":
+                shutdownRequested = true;
+                drainWorkers();
+                sendResult(id, null);
+                break;
+            case "textDocument/didOpen":
+                didOpen(params);
+                break;
+            case "textDocument/didChange":
+                didChange(params);
+                break;
+            case "textDocument/didClose":
+                didClose(params);
+                break;
+            case "textDocument/documentSymbol":
+                documentSymbol(id, params);
+                break;
+            case "$/cancelRequest":
+                cancelRequest(params.get("id"));
+                break;
+            default:
+                if (id != null) {
+                    sendError(id, METHOD_NOT_FOUND, STR."Unhandled method \{method}");
+                }
+        }
+    }
+
+    private void drainWorkers() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, Object> initializeResult() {
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("openClose", true);
+        sync.put("change", SYNC_INCREMENTAL);
+
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        capabilities.put("textDocumentSync", sync);
+        capabilities.put("documentSymbolProvider", true);
+
+        Map<String, Object> serverInfo = new LinkedHashMap<>();
+        serverInfo.put("name", "Yup++");
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("capabilities", capabilities);
+        result.put("serverInfo", serverInfo);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void didOpen(Map<String, Object> params) {
+        Map<String, Object> item = (Map<String, Object>) params.get("textDocument");
+        String uri = (String) item.get("uri");
+        TextDocument document = new TextDocument(uri, (String) item.get("text"), intValue(item.get("version")));
+        documents.put(uri, document);
+        scheduleAnalysis(document);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void didChange(Map<String, Object> params) {
+        Map<String, Object> identifier = (Map<String, Object>) params.get("textDocument");
+        TextDocument document = documents.get((String) identifier.get("uri"));
+        if (document == null) {
+            return;
+        }
+
+        int version = intValue(identifier.get("version"));
+        for (Object change : (List<Object>) params.get("contentChanges")) {
+            Map<String, Object> edit = (Map<String, Object>) change;
+            Map<String, Object> range = (Map<String, Object>) edit.get("range");
+            String text = (String) edit.get("text");
+
+            if (range == null) {
+                document.replaceAll(text, version);
+            } else {
+                Map<String, Object> start = (Map<String, Object>) range.get("start");
+                Map<String, Object> end = (Map<String, Object>) range.get("end");
+                document.applyEdit(intValue(start.get("line")), intValue(start.get("character")),
+                        intValue(end.get("line")), intValue(end.get("character")), text, version);
+            }
+        }
+
+        scheduleAnalysis(document);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void didClose(Map<String, Object> params) {
+        String uri = (String) ((Map<String, Object>) params.get("textDocument")).get("uri");
+        documents.remove(uri);
+        analyses.remove(uri);
+        deferredAnalyses.remove(uri);
+        cancel(pendingAnalyses.remove(uri));
+
+        publishDiagnostics(uri, new ArrayList<>());
+    }
+
+    /**
+     * Queues a fresh analysis of one document, cancelling any analysis of an
+     * older version that has not finished yet.
+     */
+    private void scheduleAnalysis(TextDocument document) {
+        AnalysisTask task = new AnalysisTask(document);
+        cancel(pendingAnalyses.put(document.getUri(), task));
+        workers.execute(task);
+    }
+
+    /**
+     * Schedules one analysis that was turned away by a full queue, if any.
+     * Called by each task as it finishes, so a slot is free.
+     */
+    private void retryDeferredAnalysis() {
+        for (String uri : deferredAnalyses) {
+            if (deferredAnalyses.remove(uri)) {
+                TextDocument document = documents.get(uri);
+                if (document != null) {
+                    scheduleAnalysis(document);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancels a queued or running task and takes it off the queue so it does
+     * not hold a slot other work could use.
+     */
+    private void cancel(Future<?> task) {
+        if (task != null) {
+            task.cancel(true);
+            workers.remove((Runnable) task);
+        }
+    }
+
+    /**
+     * Lexes and parses the current text of a document, reusing the cached
+     * result when the version has not moved. Returns {@code null} if the
+     * calling task was cancelled part way through.
+     */
+    private Analysis analyze(TextDocument document) {
+        Analysis cached = analyses.get(document.getUri());
+        if (cached != null && cached.snapshot().version() == document.getVersion()) {
+            return cached;
+        }
+
+        TextDocument.Snapshot snapshot = document.snapshot();
+        // Names are pooled per analysis, so they go when a newer analysis or didClose replaces it.
+        Lexer lexer = new Lexer(new Interner());
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(snapshot.text());
+        if (Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        if (Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+
+        Analysis analysis = new Analysis(snapshot, lexer.getLineIndex(), parser.getRootNode(),
+                new ArrayList<>(parser.getParseErrors()));
+        analyses.merge(document.getUri(), analysis,
+                (old, fresh) -> fresh.snapshot().version() >= old.snapshot().version() ? fresh : old);
+        return analysis;
+    }
+
+    private List<Object> diagnostics(Analysis analysis) {
+        List<Object> diagnostics = new ArrayList<>();
+        for (ParseError error : analysis.errors()) {
+            Map<String, Object> diagnostic = new LinkedHashMap<>();
+            diagnostic.put("range", range(analysis, error.start(), error.end()));
+            diagnostic.put("severity", SEVERITY_ERROR);
+            diagnostic.put("source", "yup");
+            diagnostic.put("message", error.message());
+            diagnostics.add(diagnostic);
+        }
+        return diagnostics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void documentSymbol(Object id, Map<String, Object> params) {
+        String uri = (String) ((Map<String, Object>) params.get("textDocument")).get("uri");
+        TextDocument document = documents.get(uri);
+        if (document == null) {
+            sendResult(id, new ArrayList<>());
+            return;
+        }
+
+        RequestTask task = new RequestTask(id, () -> {
+            Analysis analysis = analyze(document);
+            if (analysis == null) {
+                return null;
+            }
+
+            List<Object> symbols = new ArrayList<>();
+            collectDeclarations(analysis.root(), analysis, symbols);
+            return symbols;
+        });
+
+        pendingRequests.put(id, task);
+        workers.execute(task);
+    }
+
+    private void collectDeclarations(AST node, Analysis analysis, List<Object> symbols) {
+        if (node == null) {
+            return;
+        }
+
+        boolean function = node.getType().equals("FunctionDeclaration");
+        if ((function || node.getType().startsWith("Declaration")) && !node.getChildren().isEmpty()) {
+            AST identifier = node.getChildren().getFirst();
+
+            Map<String, Object> symbol = new LinkedHashMap<>();
+            symbol.put("name", identifier.getValue());
+            symbol.put("kind", function ? SYMBOL_KIND_FUNCTION : SYMBOL_KIND_VARIABLE);
+            symbol.put("range", range(analysis, node.getStart(), identifier.getEnd()));
+            symbol.put("selectionRange", range(analysis, identifier.getStart(), identifier.getEnd()));
+            symbols.add(symbol);
+        }
+
+        for (AST child : node.getChildren()) {
+            collectDeclarations(child, analysis, symbols);
+        }
+    }
+
+    private void cancelRequest(Object id) {
+        Future<?> pending = pendingRequests.remove(id);
+        if (pending != null) {
+            cancel(pending);
+            sendError(id, REQUEST_CANCELLED, "Request cancelled");
+        }
+    }
+
+    private void publishDiagnostics(String uri, List<Object> diagnostics) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        params.put("diagnostics", diagnostics);
+
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "textDocument/publishDiagnostics");
+        notification.put("params", params);
+        send(notification);
+    }
+
+    private void logError(String message) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("type", MESSAGE_TYPE_ERROR);
+        params.put("message", message);
+
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "window/logMessage");
+        notification.put("params", params);
+        send(notification);
+    }
+
+    private Map<String, Object> range(Analysis analysis, int start, int end) {
+        int length = analysis.snapshot().text().length();
+        Map<String, Object> range = new LinkedHashMap<>();
+        range.put("start", position(analysis.lineIndex(), Math.min(start, length)));
+        range.put("end", position(analysis.lineIndex(), Math.min(Math.max(start, end), length)));
+        return range;
+    }
+
+    private Map<String, Object> position(LineIndex lineIndex, int offset) {
+        Map<String, Object> position = new LinkedHashMap<>();
+        position.put("line", lineIndex.lineOf(offset));
+        position.put("character", lineIndex.columnOf(offset));
+        return position;
+    }
+
+    private void sendResult(Object id, Object result) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("result", result);
+        send(response);
+    }
+
+    private void sendError(Object id, int code, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        send(response);
+    }
+
+    private void send(Map<String, Object> message) {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        byte[] header = STR."Content-Length: \{body.length}\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        synchronized (out) {
+            try {
+                out.write(header);
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                System.err.println(STR."Failed to write LSP message: \{e.getMessage()}");
+            }
+        }
+    }
+
+    private String readMessage() throws IOException {
+        int contentLength = -1;
+        String line;
+
+        while ((line = readHeaderLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(STR."Invalid header: \{line}");
+                }
+            }
+        }
+
+        if (line == null || contentLength < 0) {
+            return null;
+        }
+
+        byte[] body = in.readNBytes(contentLength);
+        if (body.length < contentLength) {
+            return null;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                String header = line.toString(StandardCharsets.US_ASCII);
+                return header.endsWith("\r") ? header.substring(0, header.length() - 1) : header;
+            }
+            line.write(b);
+        }
+
+        return line.size() > 0 ? line.toString(StandardCharsets.US_ASCII) : null;
+    }
+
+    private static int intValue(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    /**
+     * Analyzes one document and publishes its diagnostics if it is still the
+     * latest version when done. Failures are logged to the client, since no
+     * request is waiting on them.
+     */
+    private final class AnalysisTask extends FutureTask<Void> {
+        private final TextDocument document;
+
+        AnalysisTask(TextDocument document) {
+            super(() -> {
+                try {
+                    Analysis analysis = analyze(document);
+                    if (analysis != null && documents.get(document.getUri()) == document
+                            && analysis.snapshot().version() == document.getVersion()) {
+                        publishDiagnostics(document.getUri(), diagnostics(analysis));
+                    }
+                    return null;
+                } finally {
+                    retryDeferredAnalysis();
+                }
+            });
+            this.document = document;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+            logError(STR."Analysis of \{document.getUri()} failed: \{t}");
+        }
+    }
+
+    /**
+     * Computes the result of one request and answers it, unless it was
+     * cancelled first. {@code null} from the computation means it was
+     * interrupted and the cancellation has been answered already.
+     */
+    private final class RequestTask extends FutureTask<Object> {
+        private final Object id;
+
+        RequestTask(Object id, Callable<Object> computation) {
+            super(() -> {
+                try {
+                    return computation.call();
+                } finally {
+                    retryDeferredAnalysis();
+                }
+            });
+            this.id = id;
+        }
+
+        @Override
+        protected void set(Object result) {
+            super.set(result);
+            if (result != null && pendingRequests.remove(id, this)) {
+                sendResult(id, result);
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+            if (pendingRequests.remove(id, this)) {
+                sendError(id, INTERNAL_ERROR, String.valueOf(t.getMessage()));
+            }
+        }
+    }
+
+    private record Analysis(TextDocument.Snapshot snapshot, LineIndex lineIndex, AST root, List<ParseError> errors) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Protocol traffic owns stdout; the lexer and parser's debug output goes to stderr instead.
+        OutputStream protocolOut = new FileOutputStream(FileDescriptor.out);
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+
+        int exitCode = new LspServer(System.in, protocolOut).run();
+        System.exit(exitCode);
+    }
+}
@@ -2,7 +2,12 @@ import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.text.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
 public class Main {
     private final JFrame frame;
@@ -11,13 +16,19 @@ public class Main {
     private final JTextPane treeTextPane;
     private final StyledDocument errorDoc;
     private final StyledDocument treeDoc;
+    private final ConsoleView console;
     private final SimpleAttributeSet errorStyle;
     private final SimpleAttributeSet successStyle;
     private final SimpleAttributeSet treeStyle;
     private final Lexer lexer;
-    private final Parser parser;
+    private Parser parser;
+    private final AstHistory parseHistory = new AstHistory(PARSE_HISTORY_SIZE);
+    private AstSnapshot displayedTree;
     private boolean isProcessing = false;
-    private final Timer debounceTimer;
+    private boolean isRunning = false;
+    // The thread running the editor's program, for the stop action; only touched on the event thread.
+    private Thread runner;
+    private Timer debounceTimer;
     private static final Color BACKGROUND_COLOR = new Color(20, 20, 20);
     private static final Color TEXT_COLOR = new Color(255, 255, 255);
     private static final Color CARET_COLOR = new Color(255, 255, 255);
@@ -25,10 +36,14 @@ public class Main {
     private static final Color SUCCESS_COLOR = new Color(100, 255, 100);
     private static final Color TREE_COLOR = new Color(180, 250, 180);
     private static final int ERROR_PANE_HEIGHT = 150;
+    private static final int OUTPUT_RING_CAPACITY = 1 << 16;
+    private static final int PARSE_HISTORY_SIZE = 100;
+    // -Dconsole.scrollback=<lines> and -Dconsole.spill=<file> configure the run console.
+    private static final int CONSOLE_SCROLLBACK = Math.max(1, Integer.getInteger("console.scrollback", 100_000));
+    private static final String CONSOLE_SPILL_FILE = System.getProperty("console.spill");
 
-    public Main() {
+    private Main() {
         this.lexer = new Lexer();
-        this.parser = new Parser(this);
 
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         GraphicsDevice defaultScreen = ge.getDefaultScreenDevice();
@@ -95,6 +110,18 @@ public class Main {
         treeScrollPane.getViewport().setBackground(new Color(25, 25, 25));
         treeScrollPane.setBorder(BorderFactory.createEmptyBorder());
 
+        // Console for program output, run with F5
+        console = ConsoleView.create(CONSOLE_SCROLLBACK);
+        JScrollPane consoleScrollPane = new JScrollPane(console);
+        consoleScrollPane.getViewport().setBackground(console.getBackground());
+        consoleScrollPane.setBorder(BorderFactory.createEmptyBorder());
+
+        JSplitPane outputSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, treeScrollPane, consoleScrollPane);
+        outputSplit.setDividerLocation(frame.getHeight() / 2);
+        outputSplit.setResizeWeight(0.5);
+        outputSplit.setBorder(null);
+        outputSplit.setDividerSize(4);
+
         // Create vertical split for code and error areas
         JSplitPane verticalSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, codeScrollPane, errorScrollPane);
         verticalSplit.setDividerLocation(frame.getHeight() - ERROR_PANE_HEIGHT);
@@ -103,7 +130,7 @@ public class Main {
         verticalSplit.setDividerSize(4);
 
         // Create horizontal split for code+error and tree areas
-        JSplitPane horizontalSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, verticalSplit, treeScrollPane);
+        JSplitPane horizontalSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, verticalSplit, outputSplit);
         horizontalSplit.setDividerLocation(frame.getWidth() * 2 / 3);
         horizontalSplit.setResizeWeight(0.7); // Give more weight to the code+error area
         horizontalSplit.setBorder(null);
@@ -112,6 +139,53 @@ public class Main {
         frame.getContentPane().setBackground(BACKGROUND_COLOR);
         frame.add(horizontalSplit);
 
+        clearErrors();
+        clearTreeDisplay();
+    }
+
+    /**
+     * Builds the editor, then connects the parts that call back into it: the
+     * parser, the key bindings and the edit listener. They are attached once
+     * the editor is fully built, so none of them can see it half-built.
+     */
+    public static Main create() {
+        Main main = new Main();
+        main.connect();
+        return main;
+    }
+
+    private void connect() {
+        parser = new Parser(this);
+
+        codeTextArea.getInputMap().put(KeyStroke.getKeyStroke("F5"), "run-program");
+        codeTextArea.getActionMap().put("run-program", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runProgram();
+            }
+        });
+        codeTextArea.getInputMap().put(KeyStroke.getKeyStroke("ctrl alt Z"), "previous-tree");
+        codeTextArea.getActionMap().put("previous-tree", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showTreeVersion(parseHistory.undo());
+            }
+        });
+        codeTextArea.getInputMap().put(KeyStroke.getKeyStroke("ctrl alt Y"), "next-tree");
+        codeTextArea.getActionMap().put("next-tree", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showTreeVersion(parseHistory.redo());
+            }
+        });
+        codeTextArea.getInputMap().put(KeyStroke.getKeyStroke("shift F5"), "stop-program");
+        codeTextArea.getActionMap().put("stop-program", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stopProgram();
+            }
+        });
+
         debounceTimer = new Timer(2000, e -> {
             processFullText();
         });
@@ -133,41 +207,57 @@ public class Main {
                 debounceTimer.restart();
             }
         });
-
-        clearErrors();
-        clearTreeDisplay();
     }
 
     private void processFullText() {
         if (isProcessing) return;
         isProcessing = true;
 
-        SwingUtilities.invokeLater(() -> {
-            clearErrors();
-            clearTreeDisplay();
-        });
+        SwingUtilities.invokeLater(this::clearErrors);
 
         try {
-            String text = codeTextArea.getText();
-            if (text == null || text.isEmpty()) {
+            AbstractDocument document = (AbstractDocument) codeTextArea.getDocument();
+            if (document.getLength() == 0) {
+                displayedTree = null;
+                SwingUtilities.invokeLater(this::clearTreeDisplay);
                 return;
             }
 
-            lexer.updateWithString(text);
+            document.readLock();
+            try {
+                lexer.update(DocumentText.of(document));
+            } finally {
+                document.readUnlock();
+            }
+
             if (lexer.getTokens() != null && !lexer.getTokens().isEmpty()) {
-                parser.setTokens(lexer.getTokens());
+                parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
                 parser.update();
 
                 ArrayList<String> errors = parser.getErrors();
 
                 final boolean hasErrors = (errors != null && !errors.isEmpty());
 
+                // A new parse follows the latest version, not one being looked at in the history.
+                while (!hasErrors && parseHistory.canRedo()) {
+                    parseHistory.redo();
+                }
+                // Unchanged trees come back as the same snapshot, so the display is only rebuilt on real changes.
+                AstSnapshot snapshot = hasErrors ? null : parseHistory.record(parser.getRootNode());
+                final boolean treeChanged = snapshot == null || !snapshot.sameTree(displayedTree);
+                displayedTree = snapshot;
+
                 SwingUtilities.invokeLater(() -> {
+                    if (treeChanged) {
+                        clearTreeDisplay();
+                    }
                     if (hasErrors) {
                         displayErrors(errors);
                     } else {
                         displaySuccessMessage();
-                        parser.printParseTree();
+                        if (treeChanged) {
+                            parser.printParseTree();
+                        }
                     }
                 });
             }
@@ -184,6 +274,114 @@ public class Main {
         }
     }
 
+    /**
+     * Runs the editor's program on a background thread, which also lexes and
+     * parses it so a large program does not stall the event thread. Its
+     * output goes through an {@link OutputRing} that the console drains once
+     * per frame, so printing never waits on the event thread.
+     */
+    private void runProgram() {
+        if (isRunning) return;
+        isRunning = true;
+
+        AbstractDocument document = (AbstractDocument) codeTextArea.getDocument();
+        runner = new Thread(() -> {
+            Lexer runLexer = new Lexer();
+            runLexer.setDebugOutput(false);
+            document.readLock();
+            try {
+                runLexer.update(DocumentText.of(document));
+            } catch (BadLocationException e) {
+                ArrayList<String> errors = new ArrayList<>();
+                errors.add(STR."Cannot read program: \{e.getMessage()}");
+                finishWithErrors(errors);
+                return;
+            } finally {
+                document.readUnlock();
+            }
+
+            Parser runParser = new Parser(null);
+            runParser.setTokens(runLexer.getTokens(), runLexer.getLineIndex());
+            runParser.update();
+            if (!runParser.getErrors().isEmpty()) {
+                finishWithErrors(runParser.getErrors());
+                return;
+            }
+
+            OutputRing ring = new OutputRing(OUTPUT_RING_CAPACITY);
+            ConsoleStream out;
+            try {
+                out = new ConsoleStream(ring, CONSOLE_SPILL_FILE != null ? Path.of(CONSOLE_SPILL_FILE) : null);
+            } catch (IOException e) {
+                ArrayList<String> errors = new ArrayList<>();
+                errors.add(STR."Cannot open console spill file: \{e.getMessage()}");
+                finishWithErrors(errors);
+                return;
+            }
+
+            // Output waits in the ring until the console is attached.
+            SwingUtilities.invokeLater(() -> console.attach(ring, this::programFinished));
+            long startNanos = System.nanoTime();
+            try {
+                new Interpreter(out).run(runParser.getRootNode());
+                out.println(STR."[finished in \{(System.nanoTime() - startNanos) / 1_000_000} ms]");
+            } catch (RuntimeError e) {
+                LineIndex lineIndex = runLexer.getLineIndex();
+                int line = lineIndex.lineOf(e.getOffset()) + 1;
+                int column = lineIndex.columnOf(e.getOffset()) + 1;
+                out.println(STR."Runtime error at line \{line}, column \{column}: \{e.getMessage()}");
+            } catch (CancellationException e) {
+                out.println("[stopped]");
+            } catch (RuntimeException e) {
+                out.println(STR."Error: \{e.getMessage()}");
+            } finally {
+                out.close();
+            }
+        }, "program-runner");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    /**
+     * Interrupts the running program. It stops at its next loop iteration,
+     * call or full console, and the console reports where.
+     */
+    private void stopProgram() {
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+
+    private void finishWithErrors(ArrayList<String> errors) {
+        SwingUtilities.invokeLater(() -> {
+            clearErrors();
+            displayErrors(errors);
+            programFinished();
+        });
+    }
+
+    private void programFinished() {
+        isRunning = false;
+        runner = null;
+    }
+
+    /**
+     * Shows a version from the parse history in the tree pane, headed by
+     * its version number.
+     */
+    private void showTreeVersion(AstSnapshot snapshot) {
+        if (snapshot == null || snapshot.sameTree(displayedTree)) {
+            return;
+        }
+
+        displayedTree = snapshot;
+        clearTreeDisplay();
+        String newer = parseHistory.canRedo() ? ", Ctrl+Alt+Y for newer" : "";
+        String older = parseHistory.canUndo() ? ", Ctrl+Alt+Z for older" : "";
+        addToDisplayTree(STR."[version \{snapshot.getVersion()}\{older}\{newer}]\n");
+        snapshot.toAst(this).printTree(0);
+    }
+
     public void displaySuccessMessage() {
         try {
             clearErrors();
@@ -256,12 +454,74 @@ public class Main {
         frame.setVisible(true);
     }
 
-    public static void main(String[] args) {
+    /**
+     * The AppCDS training run's last step: puts the bundled sample in the
+     * editor, parses it the way the debounce timer would and exits once the
+     * results are on screen, so the archive covers the editor's classes and
+     * not only the front end's.
+     */
+    private void parseSampleAndExit() {
+        codeTextArea.setText(StartupWarmup.loadSampleProgram());
+        processFullText();
+        // Queued behind the display updates processFullText posts.
+        SwingUtilities.invokeLater(() -> System.exit(0));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--lsp")) {
+            LspServer.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--warmup")) {
+            StartupWarmup.run();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--run")) {
+            Interpreter.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--run-ir")) {
+            IrBackend.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--compile")) {
+            ScriptCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--bench-parse")) {
+            ParsePipeline.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--export-ast")) {
+            AstExporter.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--workspace")) {
+            Workspace.main(new String[]{args[1]});
+            return;
+        }
+
+        boolean trainingRun = args.length > 0 && args[0].equals("--warmup-ui");
+        if (trainingRun && GraphicsEnvironment.isHeadless()) {
+            System.err.println("--warmup-ui needs a display to start the editor");
+            System.exit(1);
+        }
+
+        // Runs while the splash is up and the editor is built, ahead of the first real parse; nothing waits for it.
+        StartupWarmup.startInBackground();
         SwingUtilities.invokeLater(() -> {
-            Main mainApp = new Main();
-            SplashScreen splash = new SplashScreen(mainApp, 2500);
+            SplashScreen splash = new SplashScreen();
             splash.showSplash();
 
+            // Queued separately so the splash paints before the editor is built.
+            SwingUtilities.invokeLater(() -> {
+                Main mainApp = Main.create();
+                if (trainingRun) {
+                    splash.dismiss(mainApp, mainApp::parseSampleAndExit);
+                } else {
+                    splash.dismiss(mainApp);
+                }
+            });
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+/**
+ * The JVM instructions {@link ScriptCompiler} emits, from chapter 6 of the
+ * Java Virtual Machine Specification.
+ */
+public final class Opcodes {
+    public static final int ACONST_NULL = 1;
+    public static final int ICONST_0 = 3;
+    public static final int LCONST_0 = 9;
+    public static final int LCONST_1 = 10;
+    public static final int BIPUSH = 16;
+    public static final int SIPUSH = 17;
+    public static final int LDC = 18;
+    public static final int LDC_W = 19;
+    public static final int LDC2_W = 20;
+    public static final int LLOAD = 22;
+    public static final int ALOAD = 25;
+    public static final int LALOAD = 47;
+    public static final int LSTORE = 55;
+    public static final int ASTORE = 58;
+    public static final int LASTORE = 80;
+    public static final int DUP = 89;
+    public static final int LADD = 97;
+    public static final int LSUB = 101;
+    public static final int LMUL = 105;
+    public static final int LDIV = 109;
+    public static final int I2L = 133;
+    public static final int L2I = 136;
+    public static final int LCMP = 148;
+    public static final int IFEQ = 153;
+    public static final int IFNE = 154;
+    public static final int IFLT = 155;
+    public static final int IFGE = 156;
+    public static final int IFGT = 157;
+    public static final int IFLE = 158;
+    public static final int GOTO = 167;
+    public static final int IRETURN = 172;
+    public static final int RETURN = 177;
+    public static final int GETSTATIC = 178;
+    public static final int PUTSTATIC = 179;
+    public static final int INVOKEVIRTUAL = 182;
+    public static final int INVOKESPECIAL = 183;
+    public static final int INVOKESTATIC = 184;
+    public static final int NEW = 187;
+    public static final int NEWARRAY = 188;
+    public static final int ARRAYLENGTH = 190;
+    public static final int WIDE = 196;
+    public static final int IFNONNULL = 199;
+
+    public static final int T_LONG = 11;
+
+    private Opcodes() {
+    }
+}
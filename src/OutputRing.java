@@ -0,0 +1,100 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free ring of output lines with exactly one producer (the
+ * thread running a program) and one consumer (the console's repaint timer).
+ * The producer waits when the ring is full, so output is never dropped and
+ * memory stays fixed however much a program prints.
+ */
+public class OutputRing {
+    private static final long FULL_WAIT_NANOS = 50_000;
+
+    private final String[] slots;
+    private final int mask;
+
+    // Next slot to read, written only by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, written only by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+
+    // The producer's last view of head, so it only re-reads it when the ring looks full.
+    private long cachedHead = 0;
+
+    public OutputRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(STR."Capacity must be positive: \{capacity}");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Appends a line, waiting for the consumer while the ring is full.
+     * Producer thread only.
+     *
+     * @throws CancellationException if the producer is interrupted while
+     *         waiting, which clears the interrupt
+     */
+    public void put(String line) {
+        long t = tail.getPlain();
+        while (t - cachedHead >= slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= slots.length) {
+                if (Thread.interrupted()) {
+                    throw new CancellationException("Output producer interrupted");
+                }
+                LockSupport.parkNanos(FULL_WAIT_NANOS);
+            }
+        }
+
+        slots[(int) t & mask] = line;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Marks the end of output. Producer thread only, after its last
+     * {@link #put}.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Hands up to {@code max} waiting lines to {@code sink} in order and
+     * returns how many there were. Consumer thread only.
+     */
+    public int drain(Consumer<String> sink, int max) {
+        long h = head.getPlain();
+        int count = (int) Math.min(tail.get() - h, max);
+
+        for (int i = 0; i < count; i++) {
+            int index = (int) (h + i) & mask;
+            String line = slots[index];
+            slots[index] = null;
+            sink.accept(line);
+        }
+
+        head.lazySet(h + count);
+        return count;
+    }
+
+    /**
+     * True once the producer has closed the ring and every line has been
+     * drained.
+     */
+    public boolean isFinished() {
+        return closed && head.get() == tail.get();
+    }
+}
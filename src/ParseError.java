@@ -0,0 +1,6 @@
+/**
+ * A parse error anchored to the character offsets of the offending token,
+ * {@code start} inclusive and {@code end} exclusive.
+ */
+record ParseError(String message, int start, int end) {
+}
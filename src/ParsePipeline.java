@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Lexes and parses with the two phases overlapped: the lexer runs on its own
+ * thread and hands tokens to the parser through a {@link TokenRing}, so on a
+ * large file the parse finishes shortly after the lexer instead of starting
+ * when it ends. {@link #shouldPipeline} decides when that is worth a
+ * thread.
+ */
+public final class ParsePipeline {
+    // Inputs shorter than this lex in well under a millisecond, less than it takes to start a thread.
+    private static final int MIN_LENGTH = 64 * 1024;
+
+    // 64 batches of 256 tokens keep at most a few hundred kilobytes of tokens in flight.
+    private static final int BATCH_SIZE = 256;
+    private static final int RING_CAPACITY = 64;
+
+    private ParsePipeline() {
+    }
+
+    /**
+     * True when {@code length} characters are enough to gain from overlapping
+     * the phases and there is a second processor to run the lexer on.
+     */
+    public static boolean shouldPipeline(int length) {
+        return length >= MIN_LENGTH && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Parses {@code input} into {@code parser} while a new lexer tokenizes it
+     * on another thread, and returns that lexer for its line index. A failure
+     * in either phase is thrown from here and stops the other.
+     */
+    public static Lexer parse(CharSequence input, Parser parser) {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        TokenRing ring = new TokenRing(RING_CAPACITY, BATCH_SIZE);
+
+        Thread lexerThread = new Thread(() -> lexer.update(input, ring), "pipeline-lexer");
+        lexerThread.setDaemon(true);
+        lexerThread.start();
+
+        parser.setTokens(ring, lexer::getLineIndex);
+        boolean parsed = false;
+        try {
+            parser.update();
+            parsed = true;
+        } finally {
+            if (!parsed) {
+                ring.abandon();
+            }
+        }
+
+        // The ring is closed by now, so this only waits for the thread to exit.
+        try {
+            lexerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return lexer;
+    }
+
+    /**
+     * Lexes and parses {@code text} the usual way, one phase after the other,
+     * for comparison.
+     */
+    public static Lexer parseSequentially(CharSequence text, Parser parser) {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.update(text);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        return lexer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ParsePipeline <file> [rounds]");
+            return;
+        }
+
+        String text = Files.readString(Path.of(args[0]));
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        long bestSequential = Long.MAX_VALUE;
+        long bestPipelined = Long.MAX_VALUE;
+        int sequentialNodes = 0;
+        int pipelinedNodes = 0;
+        ArrayList<String> sequentialErrors = null;
+        ArrayList<String> pipelinedErrors = null;
+
+        // Alternating the two keeps JIT warm-up and GC pressure from favouring either side.
+        for (int round = 0; round < rounds; round++) {
+            Parser sequential = new Parser(null);
+            long start = System.nanoTime();
+            parseSequentially(text, sequential);
+            bestSequential = Math.min(bestSequential, System.nanoTime() - start);
+            sequentialNodes = countNodes(sequential.getRootNode());
+            sequentialErrors = sequential.getErrors();
+
+            Parser pipelined = new Parser(null);
+            start = System.nanoTime();
+            parse(text, pipelined);
+            bestPipelined = Math.min(bestPipelined, System.nanoTime() - start);
+            pipelinedNodes = countNodes(pipelined.getRootNode());
+            pipelinedErrors = pipelined.getErrors();
+        }
+
+        if (sequentialNodes != pipelinedNodes || !sequentialErrors.equals(pipelinedErrors)) {
+            System.err.println(STR."Pipelined parse differs: \{pipelinedNodes} nodes and \{pipelinedErrors.size()} errors, "
+                    + STR."expected \{sequentialNodes} and \{sequentialErrors.size()}");
+            System.exit(1);
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println(STR."\{text.length()} chars, \{sequentialNodes} nodes, best of \{rounds} rounds, \{processors} available processors");
+        System.out.println(STR."  sequential: \{bestSequential / 1_000_000} ms");
+        System.out.println(STR."  pipelined:  \{bestPipelined / 1_000_000} ms");
+    }
+
+    private static int countNodes(AST root) {
+        int count = 0;
+        ArrayDeque<AST> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            AST node = pending.pop();
+            count++;
+            for (AST child : node.getChildren()) {
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return count;
+    }
+}
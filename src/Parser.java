@@ -1,11 +1,20 @@
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Parser {
     private List<Token> tokens;
     private int currentPosition;
+    // How many if, while or function bodies enclose the statement being parsed.
+    private int blockDepth;
     private AST rootNode;
+    private LineIndex lineIndex;
+    // Set while parsing from a pipelined lexer: tokens grows as batches arrive.
+    private TokenRing source;
+    private Supplier<LineIndex> lineIndexSource;
     ArrayList<String> errors;
+    ArrayList<ParseError> parseErrors;
     Main main;
 
     public Parser(Main main) {
@@ -13,18 +22,31 @@ public class Parser {
         this.tokens = new ArrayList<>();
         this.currentPosition = 0;
         errors = new ArrayList<>();
+        parseErrors = new ArrayList<>();
     }
 
     public void update() {
         currentPosition = 0;
+        blockDepth = 0;
         rootNode = parseProgram();
+
+        // A pipelined lexer's line index is only complete once all its tokens have been taken.
+        if (lineIndexSource != null) {
+            lineIndex = lineIndexSource.get();
+        }
+        for (ParseError error : parseErrors) {
+            String errorMsg = formatError(error);
+            errors.add(errorMsg);
+            System.err.println(errorMsg);
+        }
     }
 
     private AST parseProgram() {
         AST program = new AST("Program", 0, 0,main);
         errors.clear();
+        parseErrors.clear();
 
-        while (currentPosition < tokens.size()) {
+        while (hasToken(currentPosition)) {
             AST statement = parseStatement();
             if (statement != null) {
                 program.addChild(statement);
@@ -35,7 +57,7 @@ public class Parser {
     }
 
     private AST parseStatement() {
-        if (currentPosition >= tokens.size()) return null;
+        if (!hasToken(currentPosition)) return null;
 
         Token token = tokens.get(currentPosition);
 
@@ -48,7 +70,20 @@ public class Parser {
                 return parseWhileStatement();
             case PRINT:
                 return parsePrintStatement();
+            case FN:
+                if (blockDepth > 0) {
+                    addError("Functions can only be declared at the top level", token);
+                    parseFunctionDeclaration();
+                    return null;
+                }
+                return parseFunctionDeclaration();
+            case RETURN:
+                return parseReturnStatement();
             case IDENTIFIER:
+                if (hasToken(currentPosition + 1)
+                        && tokens.get(currentPosition + 1).type() == TokenType.LEFT_PAREN) {
+                    return parseCallStatement();
+                }
                 return parseAssignment();
             default:
                 addError(STR."Unexpected token: \{token.value()}", token);
@@ -61,7 +96,7 @@ public class Parser {
         Token letToken = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.IDENTIFIER) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.IDENTIFIER) {
             addError("Expected identifier after 'let'", letToken);
             return null;
         }
@@ -69,7 +104,7 @@ public class Parser {
         Token identifier = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.ASSIGN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.ASSIGN) {
             addError("Expected '=' after identifier in declaration", identifier);
             return null;
         }
@@ -78,7 +113,7 @@ public class Parser {
 
         AST expression = parseExpression();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : letToken;
             addError("Expected ';' after declaration", lastToken);
             return null;
@@ -86,8 +121,8 @@ public class Parser {
 
         consume();
 
-        AST declaration = new AST("Declaration:", letToken.line(), letToken.column(), main);
-        AST identifierNode = new AST("Identifier", identifier.value(), identifier.line(), identifier.column(), main);
+        AST declaration = new AST("Declaration:", letToken.start(), letToken.end(), main);
+        AST identifierNode = new AST("Identifier", identifier.value(), identifier.start(), identifier.end(), main);
         declaration.addChild(identifierNode);
         declaration.addChild(expression);
 
@@ -99,7 +134,21 @@ public class Parser {
         Token identifier = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.ASSIGN) {
+        AST index = null;
+        if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.LEFT_BRACKET) {
+            consume();
+            index = parseExpression();
+
+            if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACKET) {
+                Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : identifier;
+                addError("Expected ']' after index", lastToken);
+                return null;
+            }
+
+            consume();
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.ASSIGN) {
             addError("Expected '=' in assignment", identifier);
             return null;
         }
@@ -108,7 +157,7 @@ public class Parser {
 
         AST expression = parseExpression();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : identifier;
             addError("Expected ';' after assignment", lastToken);
             return null;
@@ -116,9 +165,13 @@ public class Parser {
 
         consume();
 
-        AST assignment = new AST("Assignment", identifier.line(), identifier.column(), main);
-        AST identifierNode = new AST("Identifier", identifier.value(), identifier.line(), identifier.column(), main);
+        AST assignment = new AST(index == null ? "Assignment" : "IndexAssignment",
+                identifier.start(), identifier.end(), main);
+        AST identifierNode = new AST("Identifier", identifier.value(), identifier.start(), identifier.end(), main);
         assignment.addChild(identifierNode);
+        if (index != null) {
+            assignment.addChild(index);
+        }
         assignment.addChild(expression);
 
         return assignment;
@@ -128,7 +181,7 @@ public class Parser {
         Token ifToken = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
             addError("Expected '(' after 'if'", ifToken);
             return null;
         }
@@ -137,7 +190,7 @@ public class Parser {
 
         AST condition = parseCondition();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : ifToken;
             addError("Expected ')' after condition", lastToken);
             return null;
@@ -145,29 +198,31 @@ public class Parser {
 
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.LEFT_BRACE) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_BRACE) {
             addError("Expected '{' after if condition", tokens.get(currentPosition - 1));
             return null;
         }
 
         consume();
 
-        AST ifStatement = new AST("IfStatement", ifToken.line(), ifToken.column(), main);
+        AST ifStatement = new AST("IfStatement", ifToken.start(), ifToken.end(), main);
         ifStatement.addChild(condition);
 
-        AST body = new AST("Body", ifToken.line(), ifToken.column(), main);
+        AST body = new AST("Body", ifToken.start(), ifToken.end(), main);
 
-        while (currentPosition < tokens.size() && tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+        blockDepth++;
+        while (hasToken(currentPosition) && tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
             AST statement = parseStatement();
             if (statement != null) {
                 body.addChild(statement);
             }
         }
+        blockDepth--;
 
         ifStatement.addChild(body);
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
-            Token lastToken = currentPosition > 0 && currentPosition < tokens.size() ?
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+            Token lastToken = currentPosition > 0 && hasToken(currentPosition) ?
                     tokens.get(currentPosition - 1) : ifToken;
             addError("Expected '}' to close if statement", lastToken);
             return null;
@@ -182,7 +237,7 @@ public class Parser {
         Token whileToken = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
             addError("Expected '(' after 'while'", whileToken);
             return null;
         }
@@ -191,7 +246,7 @@ public class Parser {
 
         AST condition = parseCondition();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : whileToken;
             addError("Expected ')' after condition", lastToken);
             return null;
@@ -199,29 +254,31 @@ public class Parser {
 
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.LEFT_BRACE) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_BRACE) {
             addError("Expected '{' after while condition", tokens.get(currentPosition - 1));
             return null;
         }
 
         consume();
 
-        AST whileStatement = new AST("WhileStatement:", whileToken.line(), whileToken.column(), main);
+        AST whileStatement = new AST("WhileStatement:", whileToken.start(), whileToken.end(), main);
         whileStatement.addChild(condition);
 
-        AST body = new AST("Body:", whileToken.line(), whileToken.column(), main);
+        AST body = new AST("Body:", whileToken.start(), whileToken.end(), main);
 
-        while (currentPosition < tokens.size() && tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+        blockDepth++;
+        while (hasToken(currentPosition) && tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
             AST statement = parseStatement();
             if (statement != null) {
                 body.addChild(statement);
             }
         }
+        blockDepth--;
 
         whileStatement.addChild(body);
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
-            Token lastToken = currentPosition > 0 && currentPosition < tokens.size() ?
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+            Token lastToken = currentPosition > 0 && hasToken(currentPosition) ?
                     tokens.get(currentPosition - 1) : whileToken;
             addError("Expected '}' to close while statement", lastToken);
             return null;
@@ -236,7 +293,7 @@ public class Parser {
         Token printToken = tokens.get(currentPosition);
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
             addError("Expected '(' after 'print'", printToken);
             return null;
         }
@@ -245,7 +302,7 @@ public class Parser {
 
         AST expression = parseExpression();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : printToken;
             addError("Expected ')' after expression in print statement", lastToken);
             return null;
@@ -253,7 +310,7 @@ public class Parser {
 
         consume();
 
-        if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : printToken;
             addError("Expected ';' after print statement", lastToken);
             return null;
@@ -261,16 +318,176 @@ public class Parser {
 
         consume();
 
-        AST printStatement = new AST("PrintStatement", printToken.line(), printToken.column(), main);
+        AST printStatement = new AST("PrintStatement", printToken.start(), printToken.end(), main);
         printStatement.addChild(expression);
 
         return printStatement;
     }
 
+    private AST parseFunctionDeclaration() {
+        Token fnToken = tokens.get(currentPosition);
+        consume();
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.IDENTIFIER) {
+            addError("Expected function name after 'fn'", fnToken);
+            return null;
+        }
+
+        Token name = tokens.get(currentPosition);
+        consume();
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_PAREN) {
+            addError("Expected '(' after function name", name);
+            return null;
+        }
+
+        consume();
+
+        AST parameters = new AST("Parameters", name.start(), name.end(), main);
+
+        if (hasToken(currentPosition) && tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+            while (true) {
+                if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.IDENTIFIER) {
+                    addError("Expected parameter name", tokens.get(currentPosition - 1));
+                    return null;
+                }
+
+                Token parameter = tokens.get(currentPosition);
+                consume();
+                parameters.addChild(new AST("Identifier", parameter.value(), parameter.start(), parameter.end(), main));
+
+                if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.COMMA) {
+                    consume();
+                } else {
+                    break;
+                }
+            }
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : fnToken;
+            addError("Expected ')' after parameters", lastToken);
+            return null;
+        }
+
+        consume();
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.LEFT_BRACE) {
+            addError("Expected '{' after function parameters", tokens.get(currentPosition - 1));
+            return null;
+        }
+
+        consume();
+
+        AST function = new AST("FunctionDeclaration", fnToken.start(), fnToken.end(), main);
+        function.addChild(new AST("Identifier", name.value(), name.start(), name.end(), main));
+        function.addChild(parameters);
+
+        AST body = new AST("Body", fnToken.start(), fnToken.end(), main);
+
+        blockDepth++;
+        while (hasToken(currentPosition) && tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+            AST statement = parseStatement();
+            if (statement != null) {
+                body.addChild(statement);
+            }
+        }
+        blockDepth--;
+
+        function.addChild(body);
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACE) {
+            Token lastToken = currentPosition > 0 && hasToken(currentPosition) ?
+                    tokens.get(currentPosition - 1) : fnToken;
+            addError("Expected '}' to close function body", lastToken);
+            return null;
+        }
+
+        consume();
+
+        return function;
+    }
+
+    private AST parseReturnStatement() {
+        Token returnToken = tokens.get(currentPosition);
+        consume();
+
+        AST returnStatement = new AST("ReturnStatement", returnToken.start(), returnToken.end(), main);
+
+        if (hasToken(currentPosition) && tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+            returnStatement.addChild(parseExpression());
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : returnToken;
+            addError("Expected ';' after return statement", lastToken);
+            return null;
+        }
+
+        consume();
+
+        return returnStatement;
+    }
+
+    private AST parseCallStatement() {
+        Token identifier = tokens.get(currentPosition);
+        consume();
+
+        AST call = parseCall(identifier);
+        if (call == null) {
+            return null;
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.SEMICOLON) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : identifier;
+            addError("Expected ';' after call", lastToken);
+            return null;
+        }
+
+        consume();
+
+        AST statement = new AST("CallStatement", identifier.start(), identifier.end(), main);
+        statement.addChild(call);
+
+        return statement;
+    }
+
+    // Expects the current token to be the '(' after the function name.
+    private AST parseCall(Token identifier) {
+        consume();
+
+        AST call = new AST("Call", identifier.value(), identifier.start(), identifier.end(), main);
+
+        if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.RIGHT_PAREN) {
+            consume();
+            return call;
+        }
+
+        while (true) {
+            call.addChild(parseExpression());
+
+            if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.COMMA) {
+                consume();
+            } else {
+                break;
+            }
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : identifier;
+            addError("Expected ')' after arguments", lastToken);
+            return null;
+        }
+
+        consume();
+
+        return call;
+    }
+
     private AST parseCondition() {
         AST leftExpression = parseExpression();
 
-        if (currentPosition >= tokens.size() || !isRelationalOperator(tokens.get(currentPosition).type())) {
+        if (!hasToken(currentPosition) || !isRelationalOperator(tokens.get(currentPosition).type())) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : tokens.getFirst();
             addError("Expected relational operator in condition", lastToken);
             return null;
@@ -281,10 +498,10 @@ public class Parser {
 
         AST rightExpression = parseExpression();
 
-        AST condition = new AST("Condition", operator.line(), operator.column(), main);
+        AST condition = new AST("Condition", operator.start(), operator.end(), main);
         condition.addChild(leftExpression);
 
-        AST operatorNode = new AST("RelationalOperator", operator.value(), operator.line(), operator.column(), main);
+        AST operatorNode = new AST("RelationalOperator", operator.value(), operator.start(), operator.end(), main);
         condition.addChild(operatorNode);
 
         condition.addChild(rightExpression);
@@ -295,7 +512,7 @@ public class Parser {
     private AST parseExpression() {
         AST leftTerm = parseTerm();
 
-        while (currentPosition < tokens.size() &&
+        while (hasToken(currentPosition) &&
                 (tokens.get(currentPosition).type() == TokenType.PLUS ||
                         tokens.get(currentPosition).type() == TokenType.MINUS)) {
 
@@ -304,10 +521,10 @@ public class Parser {
 
             AST rightTerm = parseTerm();
 
-            AST expression = new AST("Expression", operator.line(), operator.column(), main);
+            AST expression = new AST("Expression", operator.start(), operator.end(), main);
             expression.addChild(leftTerm);
 
-            AST operatorNode = new AST("Operator", operator.value(), operator.line(), operator.column(), main);
+            AST operatorNode = new AST("Operator", operator.value(), operator.start(), operator.end(), main);
             expression.addChild(operatorNode);
 
             expression.addChild(rightTerm);
@@ -321,7 +538,7 @@ public class Parser {
     private AST parseTerm() {
         AST leftFactor = parseFactor();
 
-        while (currentPosition < tokens.size() &&
+        while (hasToken(currentPosition) &&
                 (tokens.get(currentPosition).type() == TokenType.MULTIPLY ||
                         tokens.get(currentPosition).type() == TokenType.DIVIDE)) {
 
@@ -330,10 +547,10 @@ public class Parser {
 
             AST rightFactor = parseFactor();
 
-            AST term = new AST("Term", operator.line(), operator.column(), main);
+            AST term = new AST("Term", operator.start(), operator.end(), main);
             term.addChild(leftFactor);
 
-            AST operatorNode = new AST("Operator", operator.value(), operator.line(), operator.column(), main);
+            AST operatorNode = new AST("Operator", operator.value(), operator.start(), operator.end(), main);
             term.addChild(operatorNode);
 
             term.addChild(rightFactor);
@@ -345,7 +562,7 @@ public class Parser {
     }
 
     private AST parseFactor() {
-        if (currentPosition >= tokens.size()) {
+        if (!hasToken(currentPosition)) {
             Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : tokens.getFirst();
             addError("Unexpected end of input while parsing factor", lastToken);
             return null;
@@ -356,17 +573,33 @@ public class Parser {
         switch (token.type()) {
             case NUMBER:
                 consume();
-                return new AST("Number", token.value(), token.line(), token.column(), main);
+                if (!isLongLiteral(token.value())) {
+                    addError(STR."Number out of 64-bit range: \{token.value()}", token);
+                }
+                return new AST("Number", token.value(), token.start(), token.end(), main);
 
             case IDENTIFIER:
                 consume();
-                return new AST("Identifier", token.value(), token.line(), token.column(), main);
+                AST identifierNode = new AST("Identifier", token.value(), token.start(), token.end(), main);
+
+                if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.LEFT_BRACKET) {
+                    return parseIndex(identifierNode, token);
+                }
+
+                if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.LEFT_PAREN) {
+                    return parseCall(token);
+                }
+
+                return identifierNode;
+
+            case LEFT_BRACKET:
+                return parseArrayLiteral();
 
             case LEFT_PAREN:
                 consume();
                 AST expression = parseExpression();
 
-                if (currentPosition >= tokens.size() || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
+                if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_PAREN) {
                     Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : token;
                     addError("Expected ')' to close expression", lastToken);
                     return null;
@@ -382,6 +615,67 @@ public class Parser {
         }
     }
 
+    private AST parseIndex(AST identifierNode, Token identifier) {
+        consume();
+
+        AST index = parseExpression();
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACKET) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : identifier;
+            addError("Expected ']' after index", lastToken);
+            return null;
+        }
+
+        consume();
+
+        AST indexNode = new AST("Index", identifier.start(), identifier.end(), main);
+        indexNode.addChild(identifierNode);
+        indexNode.addChild(index);
+
+        return indexNode;
+    }
+
+    private AST parseArrayLiteral() {
+        Token bracketToken = tokens.get(currentPosition);
+        consume();
+
+        AST array = new AST("ArrayLiteral", bracketToken.start(), bracketToken.end(), main);
+
+        if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.RIGHT_BRACKET) {
+            consume();
+            return array;
+        }
+
+        while (true) {
+            array.addChild(parseExpression());
+
+            if (hasToken(currentPosition) && tokens.get(currentPosition).type() == TokenType.COMMA) {
+                consume();
+            } else {
+                break;
+            }
+        }
+
+        if (!hasToken(currentPosition) || tokens.get(currentPosition).type() != TokenType.RIGHT_BRACKET) {
+            Token lastToken = currentPosition > 0 ? tokens.get(currentPosition - 1) : bracketToken;
+            addError("Expected ']' to close array literal", lastToken);
+            return null;
+        }
+
+        consume();
+
+        return array;
+    }
+
+    private boolean isLongLiteral(String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     private boolean isRelationalOperator(TokenType type) {
         return type == TokenType.EQUAL ||
                 type == TokenType.NOT_EQUAL ||
@@ -395,8 +689,50 @@ public class Parser {
         currentPosition++;
     }
 
+    // With a pipelined lexer this waits for the batch holding the token, or for the end of input.
+    private boolean hasToken(int position) {
+        while (position >= tokens.size()) {
+            if (source == null) {
+                return false;
+            }
+            Token[] batch = source.take();
+            if (batch == null) {
+                source = null;
+                return false;
+            }
+            Collections.addAll(tokens, batch);
+        }
+        return true;
+    }
+
     public void setTokens(ArrayList<Token> arrayTokens) {
         this.tokens = arrayTokens;
+        this.lineIndex = null;
+        this.source = null;
+        this.lineIndexSource = null;
+    }
+
+    /**
+     * Sets the tokens to parse along with the line index of the text they
+     * came from, so error messages can give real line and column numbers.
+     */
+    public void setTokens(ArrayList<Token> arrayTokens, LineIndex lineIndex) {
+        this.tokens = arrayTokens;
+        this.lineIndex = lineIndex;
+        this.source = null;
+        this.lineIndexSource = null;
+    }
+
+    /**
+     * Parses tokens as a lexer on another thread publishes them to
+     * {@code ring}. {@code lineIndex} supplies the lexer's line index, which
+     * is read once the end of the ring has been reached.
+     */
+    public void setTokens(TokenRing ring, Supplier<LineIndex> lineIndex) {
+        this.tokens = new ArrayList<>();
+        this.lineIndex = null;
+        this.source = ring;
+        this.lineIndexSource = lineIndex;
     }
 
     public void printParseTree() {
@@ -408,13 +744,26 @@ public class Parser {
     }
 
     private void addError(String message, Token token) {
-        String errorMsg = String.format("Line %d, Column %d: %s",
-                token.line()/2, token.column(), message);
-        errors.add(errorMsg);
-        System.err.println(errorMsg);
+        parseErrors.add(new ParseError(message, token.start(), token.end()));
+    }
+
+    private String formatError(ParseError error) {
+        if (lineIndex != null) {
+            return String.format("Line %d, Column %d: %s",
+                    lineIndex.lineOf(error.start()) + 1, lineIndex.columnOf(error.start()) + 1, error.message());
+        }
+        return String.format("Offset %d: %s", error.start(), error.message());
     }
 
    ArrayList<String> getErrors(){
         return errors;
    }
+
+    ArrayList<ParseError> getParseErrors() {
+        return parseErrors;
+    }
+
+    AST getRootNode() {
+        return rootNode;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+/**
+ * An error raised while compiling or running a program, anchored to the
+ * character offset of the node that caused it.
+ */
+public class RuntimeError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int offset;
+
+    public RuntimeError(String message, int offset) {
+        super(message);
+        this.offset = offset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+}
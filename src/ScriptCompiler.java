@@ -0,0 +1,755 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Compiles a whole program ahead of time to a class with a {@code main}
+ * method, so it runs without the lexer, parser or interpreter. Top-level
+ * statements are packed into chunk methods that each stay under the JVM's
+ * limit on method size. Variables live in static fields, and each chunk
+ * works on JVM locals loaded from them on entry and stored back on exit.
+ * {@code print} writes to a buffered stream that is flushed on exit, and
+ * runtime errors print the same message as {@link Interpreter} and exit
+ * with status 1.
+ *
+ * <p>Variable kinds and compile-time errors follow the interpreter exactly;
+ * checked arithmetic is not supported.
+ */
+public class ScriptCompiler {
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+    private static final String STRING = "java/lang/String";
+    private static final String STRING_BUILDER = "java/lang/StringBuilder";
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    // Under the JVM's 65535-byte limit with room for a chunk's scratch local setup and return.
+    private static final int MAX_CHUNK_SIZE = 60_000;
+    // getstatic plus a wide store on entry, and a wide load plus putstatic on exit.
+    private static final int VARIABLE_COPY_SIZE = 14;
+    // Planning puts locals here so every access is measured at its widest encoding.
+    private static final int PLANNING_FIRST_LOCAL = 256;
+
+    private final ClassFileWriter classFile;
+    private final LineIndex lineIndex;
+    private final Map<String, Variable> variables = new HashMap<>();
+    private final List<Variable> declarationOrder = new ArrayList<>();
+    // The local each variable is held in while the current method runs.
+    private final Map<Variable, Integer> methodLocals = new HashMap<>();
+    private final List<String> localTypes = new ArrayList<>();
+    private final List<String> stack = new ArrayList<>();
+    private List<String> frameLocals;
+    private ClassFileWriter.Code code;
+    private int nextLocal;
+    private int scratchLocal;
+    private int stackSlots;
+    private int maxStackSlots;
+
+    private ScriptCompiler(String className, LineIndex lineIndex) {
+        this.classFile = new ClassFileWriter(className);
+        this.lineIndex = lineIndex;
+    }
+
+    /**
+     * Returns the class file for {@code program}. Throws {@link RuntimeError}
+     * for the errors the interpreter would report before running anything.
+     */
+    public static byte[] compile(AST program, String className, LineIndex lineIndex) {
+        // Every local is initialized before the first branch target so all stack map frames in a chunk share
+        // one layout, which means knowing them up front: the first pass measures each statement and finds the
+        // variables it uses, which decides the chunks, and the second emits them.
+        ScriptCompiler planner = new ScriptCompiler(className, lineIndex);
+        List<Chunk> chunks = planner.plan(program);
+
+        ScriptCompiler compiler = new ScriptCompiler(className, lineIndex);
+        List<AST> statements = program.getChildren();
+        for (int i = 0; i < chunks.size(); i++) {
+            compiler.compileChunk(STR."chunk\{i}", chunks.get(i), statements);
+        }
+        compiler.compileMain(chunks.size());
+        compiler.compileFail();
+        compiler.compileCheckIndex();
+        return compiler.classFile.toByteArray();
+    }
+
+    /**
+     * Compiles each top-level statement on its own to measure it, and packs
+     * consecutive statements into chunks whose code, including copying
+     * their variables in and out, fits in one method.
+     */
+    private List<Chunk> plan(AST program) {
+        List<AST> statements = program.getChildren();
+        List<Chunk> chunks = new ArrayList<>();
+        int first = 0;
+        int chunkSize = 0;
+        Set<Variable> chunkVariables = new LinkedHashSet<>();
+
+        for (int i = 0; i < statements.size(); i++) {
+            startMethod(classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "plan", "()V"),
+                    PLANNING_FIRST_LOCAL);
+            compileStatement(statements.get(i));
+            int size = code.position();
+            if (size + VARIABLE_COPY_SIZE * methodLocals.size() > MAX_CHUNK_SIZE) {
+                throw new RuntimeError("Statement is too large for one JVM method; split it into smaller statements",
+                        statements.get(i).getStart());
+            }
+
+            Set<Variable> merged = new LinkedHashSet<>(chunkVariables);
+            merged.addAll(methodLocals.keySet());
+            if (i > first && chunkSize + size + VARIABLE_COPY_SIZE * merged.size() > MAX_CHUNK_SIZE) {
+                chunks.add(new Chunk(first, i, List.copyOf(chunkVariables)));
+                first = i;
+                chunkSize = 0;
+                merged = new LinkedHashSet<>(methodLocals.keySet());
+            }
+            chunkSize += size;
+            chunkVariables = merged;
+        }
+
+        chunks.add(new Chunk(first, statements.size(), List.copyOf(chunkVariables)));
+        return chunks;
+    }
+
+    /**
+     * {@code static void <name>()}: loads the chunk's variables into locals,
+     * runs its statements and stores the variables back.
+     */
+    private void compileChunk(String name, Chunk chunk, List<AST> statements) {
+        startMethod(classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, name, "()V"), 0);
+        for (Variable variable : chunk.variables()) {
+            methodLocals.put(variable, allocateLocal(variable.type()));
+        }
+        frameLocals = List.copyOf(localTypes);
+
+        code.op(Opcodes.LCONST_0);
+        code.local(Opcodes.LSTORE, scratchLocal);
+        for (Variable variable : chunk.variables()) {
+            code.opShort(Opcodes.GETSTATIC, fieldRef(variable));
+            code.local(variable.array() ? Opcodes.ASTORE : Opcodes.LSTORE, methodLocals.get(variable));
+        }
+
+        for (int i = chunk.first(); i < chunk.end(); i++) {
+            compileStatement(statements.get(i));
+        }
+
+        for (Variable variable : chunk.variables()) {
+            code.local(variable.array() ? Opcodes.ALOAD : Opcodes.LLOAD, methodLocals.get(variable));
+            code.opShort(Opcodes.PUTSTATIC, fieldRef(variable));
+        }
+        code.op(Opcodes.RETURN);
+        // Copying a long variable in or out holds two stack slots.
+        code.finish(Math.max(maxStackSlots, 2), nextLocal);
+    }
+
+    private void compileMain(int chunkCount) {
+        classFile.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "out", STR."L\{PRINT_STREAM};");
+        for (Variable variable : declarationOrder) {
+            classFile.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, variable.field(),
+                    variable.type());
+        }
+
+        startMethod(classFile.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "main",
+                "([Ljava/lang/String;)V"), 1);
+
+        // out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), size), false)
+        newObject(PRINT_STREAM);
+        newObject("java/io/BufferedOutputStream");
+        newObject("java/io/FileOutputStream");
+        code.opShort(Opcodes.GETSTATIC, classFile.fieldRef("java/io/FileDescriptor", "out", "Ljava/io/FileDescriptor;"));
+        push("java/io/FileDescriptor");
+        invokeSpecial("java/io/FileOutputStream", "<init>", "(Ljava/io/FileDescriptor;)V", 2);
+        pushInt(OUTPUT_BUFFER_SIZE);
+        invokeSpecial("java/io/BufferedOutputStream", "<init>", "(Ljava/io/OutputStream;I)V", 3);
+        pushInt(0);
+        invokeSpecial(PRINT_STREAM, "<init>", "(Ljava/io/OutputStream;Z)V", 3);
+        code.opShort(Opcodes.PUTSTATIC, classFile.fieldRef(classFile.getClassName(), "out", STR."L\{PRINT_STREAM};"));
+        pop(1);
+
+        for (int i = 0; i < chunkCount; i++) {
+            code.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(classFile.getClassName(), STR."chunk\{i}", "()V"));
+        }
+
+        code.opShort(Opcodes.GETSTATIC, classFile.fieldRef(classFile.getClassName(), "out", STR."L\{PRINT_STREAM};"));
+        code.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(PRINT_STREAM, "flush", "()V"));
+        code.op(Opcodes.RETURN);
+        code.finish(Math.max(maxStackSlots, 1), nextLocal);
+    }
+
+    /**
+     * Starts emitting {@code method}, with its locals numbered from
+     * {@code firstLocal} and the scratch long local allocated first.
+     */
+    private void startMethod(ClassFileWriter.Code method, int firstLocal) {
+        code = method;
+        methodLocals.clear();
+        localTypes.clear();
+        stack.clear();
+        stackSlots = 0;
+        maxStackSlots = 0;
+        nextLocal = firstLocal;
+        frameLocals = List.of();
+        scratchLocal = allocateLocal("J");
+    }
+
+    private void compileBlock(AST block) {
+        for (AST statement : block.getChildren()) {
+            compileStatement(statement);
+        }
+    }
+
+    private void compileStatement(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Declaration:":
+                compileDeclaration(children.get(0), children.get(1));
+                break;
+            case "Assignment":
+                compileAssignment(children.get(0), children.get(1));
+                break;
+            case "IndexAssignment": {
+                Variable variable = lookup(children.get(0), true);
+                loadVariable(variable);
+                loadVariable(variable);
+                compileNumber(children.get(1));
+                checkIndex(node.getStart());
+                compileNumber(children.get(2));
+                code.op(Opcodes.LASTORE);
+                pop(3);
+                break;
+            }
+            case "IfStatement": {
+                ClassFileWriter.Label end = new ClassFileWriter.Label();
+                compileCondition(children.get(0), end);
+                compileBlock(children.get(1));
+                bind(end);
+                break;
+            }
+            case "WhileStatement:": {
+                ClassFileWriter.Label condition = new ClassFileWriter.Label();
+                ClassFileWriter.Label end = new ClassFileWriter.Label();
+                bind(condition);
+                compileCondition(children.get(0), end);
+                compileBlock(children.get(1));
+                code.branch(Opcodes.GOTO, condition);
+                bind(end);
+                break;
+            }
+            case "PrintStatement": {
+                AST expression = children.get(0);
+                code.opShort(Opcodes.GETSTATIC, classFile.fieldRef(classFile.getClassName(), "out", STR."L\{PRINT_STREAM};"));
+                push(PRINT_STREAM);
+                if (isArrayExpression(expression)) {
+                    compileArray(expression);
+                    code.opShort(Opcodes.INVOKESTATIC, classFile.methodRef("java/util/Arrays", "toString", "([J)Ljava/lang/String;"));
+                    pop(1);
+                    push(STRING);
+                    code.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(PRINT_STREAM, "println", "(Ljava/lang/String;)V"));
+                } else {
+                    compileNumber(expression);
+                    code.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(PRINT_STREAM, "println", "(J)V"));
+                }
+                pop(2);
+                break;
+            }
+            case "FunctionDeclaration":
+            case "ReturnStatement":
+            case "CallStatement":
+                throw new RuntimeError("Functions are not supported by the compiler yet; use --run", node.getStart());
+            default:
+                throw new RuntimeError(STR."Cannot execute \{node.getType()}", node.getStart());
+        }
+    }
+
+    private void compileDeclaration(AST identifier, AST expression) {
+        // The initializer sees the variables in scope before this declaration.
+        if (isArrayExpression(expression)) {
+            compileArray(expression);
+            storeVariable(declare(identifier, true));
+        } else {
+            compileNumber(expression);
+            storeVariable(declare(identifier, false));
+        }
+    }
+
+    private void compileAssignment(AST identifier, AST expression) {
+        Variable variable = lookup(identifier, isArrayExpression(expression));
+        if (variable.array()) {
+            compileArray(expression);
+        } else {
+            compileNumber(expression);
+        }
+        storeVariable(variable);
+    }
+
+    /**
+     * Evaluates a condition and jumps to {@code ifFalse} when it does not
+     * hold.
+     */
+    private void compileCondition(AST node, ClassFileWriter.Label ifFalse) {
+        List<AST> children = node.getChildren();
+        compileNumber(children.get(0));
+        compileNumber(children.get(2));
+
+        int jump;
+        switch (children.get(1).getValue()) {
+            case "==" -> jump = Opcodes.IFNE;
+            case "!=" -> jump = Opcodes.IFEQ;
+            case "<" -> jump = Opcodes.IFGE;
+            case ">" -> jump = Opcodes.IFLE;
+            case "<=" -> jump = Opcodes.IFGT;
+            case ">=" -> jump = Opcodes.IFLT;
+            default -> throw new RuntimeError(STR."Unknown relational operator \{children.get(1).getValue()}",
+                    node.getStart());
+        }
+
+        code.op(Opcodes.LCMP);
+        pop(2);
+        code.branch(jump, ifFalse);
+    }
+
+    private void compileNumber(AST node) {
+        List<AST> children = node.getChildren();
+
+        switch (node.getType()) {
+            case "Number":
+                pushLong(Long.parseLong(node.getValue()));
+                break;
+            case "Identifier":
+                loadVariable(lookup(node, false));
+                break;
+            case "Index": {
+                Variable variable = lookup(children.get(0), true);
+                loadVariable(variable);
+                loadVariable(variable);
+                compileNumber(children.get(1));
+                checkIndex(node.getStart());
+                code.op(Opcodes.LALOAD);
+                pop(2);
+                push("J");
+                break;
+            }
+            case "Expression":
+            case "Term":
+                compileNumber(children.get(0));
+                compileNumber(children.get(2));
+                compileArithmetic(children.get(1).getValue(), node.getStart());
+                break;
+            case "Call":
+                throw new RuntimeError("Functions are not supported by the compiler yet; use --run", node.getStart());
+            default:
+                throw new RuntimeError(STR."Expected a number but found \{node.getType()}", node.getStart());
+        }
+    }
+
+    private void compileArithmetic(String operator, int offset) {
+        switch (operator) {
+            case "+" -> code.op(Opcodes.LADD);
+            case "-" -> code.op(Opcodes.LSUB);
+            case "*" -> code.op(Opcodes.LMUL);
+            case "/" -> {
+                ClassFileWriter.Label nonZero = new ClassFileWriter.Label();
+                code.local(Opcodes.LSTORE, scratchLocal);
+                pop(1);
+                code.local(Opcodes.LLOAD, scratchLocal);
+                push("J");
+                pushLong(0);
+                code.op(Opcodes.LCMP);
+                pop(2);
+                code.branch(Opcodes.IFNE, nonZero);
+                pushString(STR."\{location(offset)}Division by zero");
+                code.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(classFile.getClassName(), "fail", "(Ljava/lang/String;)V"));
+                pop(1);
+                bind(nonZero);
+                code.local(Opcodes.LLOAD, scratchLocal);
+                push("J");
+                code.op(Opcodes.LDIV);
+            }
+            default -> throw new RuntimeError(STR."Unknown operator \{operator}", offset);
+        }
+        pop(2);
+        push("J");
+    }
+
+    private void compileArray(AST node) {
+        switch (node.getType()) {
+            case "ArrayLiteral": {
+                List<AST> children = node.getChildren();
+                pushInt(children.size());
+                code.opByte(Opcodes.NEWARRAY, Opcodes.T_LONG);
+                pop(1);
+                push("[J");
+                for (int i = 0; i < children.size(); i++) {
+                    code.op(Opcodes.DUP);
+                    push("[J");
+                    pushInt(i);
+                    compileNumber(children.get(i));
+                    code.op(Opcodes.LASTORE);
+                    pop(3);
+                }
+                break;
+            }
+            case "Identifier":
+                loadVariable(lookup(node, true));
+                break;
+            default:
+                throw new RuntimeError(STR."Expected an array but found \{node.getType()}", node.getStart());
+        }
+    }
+
+    // Expects the array and a long index on the stack and leaves the array and an int index.
+    private void checkIndex(int offset) {
+        pushString(location(offset));
+        code.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(classFile.getClassName(), "checkIndex",
+                "([JJLjava/lang/String;)I"));
+        pop(3);
+        push("I");
+    }
+
+    private boolean isArrayExpression(AST node) {
+        if (node.getType().equals("ArrayLiteral")) {
+            return true;
+        }
+        if (node.getType().equals("Identifier")) {
+            Variable variable = variables.get(node.getValue());
+            return variable != null && variable.array();
+        }
+        return false;
+    }
+
+    private Variable declare(AST identifier, boolean array) {
+        Variable existing = variables.get(identifier.getValue());
+        if (existing != null) {
+            if (existing.array() != array) {
+                throw new RuntimeError(STR."'\{identifier.getValue()}' is already declared as \{describe(existing.array())}",
+                        identifier.getStart());
+            }
+            return existing;
+        }
+
+        Variable variable = new Variable(declarationOrder.size(), array);
+        variables.put(identifier.getValue(), variable);
+        declarationOrder.add(variable);
+        return variable;
+    }
+
+    private Variable lookup(AST identifier, boolean array) {
+        Variable variable = variables.get(identifier.getValue());
+        if (variable == null) {
+            throw new RuntimeError(STR."Undefined variable '\{identifier.getValue()}'", identifier.getStart());
+        }
+        if (variable.array() != array) {
+            throw new RuntimeError(STR."'\{identifier.getValue()}' is \{describe(variable.array())}, not \{describe(array)}",
+                    identifier.getStart());
+        }
+        return variable;
+    }
+
+    private static String describe(boolean array) {
+        return array ? "an array" : "a number";
+    }
+
+    private int allocateLocal(String type) {
+        int local = nextLocal;
+        localTypes.add(type);
+        nextLocal += type.equals("J") ? 2 : 1;
+        return local;
+    }
+
+    private void loadVariable(Variable variable) {
+        code.local(variable.array() ? Opcodes.ALOAD : Opcodes.LLOAD, localFor(variable));
+        push(variable.type());
+    }
+
+    private void storeVariable(Variable variable) {
+        code.local(variable.array() ? Opcodes.ASTORE : Opcodes.LSTORE, localFor(variable));
+        pop(1);
+    }
+
+    // Chunks know their variables before emitting, so only planning allocates here.
+    private int localFor(Variable variable) {
+        return methodLocals.computeIfAbsent(variable, v -> allocateLocal(v.type()));
+    }
+
+    private int fieldRef(Variable variable) {
+        return classFile.fieldRef(classFile.getClassName(), variable.field(), variable.type());
+    }
+
+    private String location(int offset) {
+        int line = lineIndex.lineOf(offset) + 1;
+        int column = lineIndex.columnOf(offset) + 1;
+        return STR."Runtime error at line \{line}, column \{column}: ";
+    }
+
+    private void bind(ClassFileWriter.Label label) {
+        code.bind(label, frameLocals, stack);
+    }
+
+    private void newObject(String type) {
+        code.opShort(Opcodes.NEW, classFile.classRef(type));
+        code.op(Opcodes.DUP);
+        push(type);
+        push(type);
+    }
+
+    private void invokeSpecial(String owner, String name, String descriptor, int consumed) {
+        code.opShort(Opcodes.INVOKESPECIAL, classFile.methodRef(owner, name, descriptor));
+        pop(consumed);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(Opcodes.ICONST_0 + value);
+        } else if (value == (byte) value) {
+            code.opByte(Opcodes.BIPUSH, value);
+        } else if (value == (short) value) {
+            code.opShort(Opcodes.SIPUSH, value);
+        } else {
+            loadConstant(code, classFile.integer(value));
+        }
+        push("I");
+    }
+
+    private void pushLong(long value) {
+        if (value == 0) {
+            code.op(Opcodes.LCONST_0);
+        } else if (value == 1) {
+            code.op(Opcodes.LCONST_1);
+        } else {
+            code.opShort(Opcodes.LDC2_W, classFile.longConstant(value));
+        }
+        push("J");
+    }
+
+    private void pushString(String value) {
+        loadConstant(code, classFile.string(value));
+        push(STRING);
+    }
+
+    private static void loadConstant(ClassFileWriter.Code method, int index) {
+        if (index <= 255) {
+            method.opByte(Opcodes.LDC, index);
+        } else {
+            method.opShort(Opcodes.LDC_W, index);
+        }
+    }
+
+    private void push(String type) {
+        stack.add(type);
+        stackSlots += type.equals("J") ? 2 : 1;
+        maxStackSlots = Math.max(maxStackSlots, stackSlots);
+    }
+
+    private void pop(int count) {
+        for (int i = 0; i < count; i++) {
+            stackSlots -= stack.removeLast().equals("J") ? 2 : 1;
+        }
+    }
+
+    /**
+     * {@code static void fail(String message)}: flushes program output,
+     * prints the message to stderr and exits with status 1.
+     */
+    private void compileFail() {
+        ClassFileWriter.Code fail = classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC,
+                "fail", "(Ljava/lang/String;)V");
+        fail.opShort(Opcodes.GETSTATIC, classFile.fieldRef(classFile.getClassName(), "out", STR."L\{PRINT_STREAM};"));
+        fail.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(PRINT_STREAM, "flush", "()V"));
+        fail.opShort(Opcodes.GETSTATIC, classFile.fieldRef("java/lang/System", "err", STR."L\{PRINT_STREAM};"));
+        fail.opByte(Opcodes.ALOAD, 0);
+        fail.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(PRINT_STREAM, "println", "(Ljava/lang/String;)V"));
+        fail.op(Opcodes.ICONST_0 + 1);
+        fail.opShort(Opcodes.INVOKESTATIC, classFile.methodRef("java/lang/System", "exit", "(I)V"));
+        fail.op(Opcodes.RETURN);
+        fail.finish(2, 1);
+    }
+
+    /**
+     * {@code static int checkIndex(long[] array, long index, String location)}:
+     * fails the way the interpreter does for an unassigned array or an index
+     * out of bounds, and otherwise returns the index as an int.
+     */
+    private void compileCheckIndex() {
+        ClassFileWriter.Code check = classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC,
+                "checkIndex", "([JJLjava/lang/String;)I");
+        List<String> locals = List.of("[J", "J", STRING);
+        ClassFileWriter.Label assigned = new ClassFileWriter.Label();
+        ClassFileWriter.Label outOfBounds = new ClassFileWriter.Label();
+        int append = classFile.methodRef(STRING_BUILDER, "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+        int fail = classFile.methodRef(classFile.getClassName(), "fail", "(Ljava/lang/String;)V");
+
+        check.opByte(Opcodes.ALOAD, 0);
+        check.branch(Opcodes.IFNONNULL, assigned);
+        startMessage(check);
+        loadConstant(check, classFile.string("Array used before it was assigned"));
+        check.opShort(Opcodes.INVOKEVIRTUAL, append);
+        finishMessage(check, fail);
+
+        check.bind(assigned, locals, List.of());
+        check.opByte(Opcodes.LLOAD, 1);
+        check.op(Opcodes.LCONST_0);
+        check.op(Opcodes.LCMP);
+        check.branch(Opcodes.IFLT, outOfBounds);
+        check.opByte(Opcodes.LLOAD, 1);
+        check.opByte(Opcodes.ALOAD, 0);
+        check.op(Opcodes.ARRAYLENGTH);
+        check.op(Opcodes.I2L);
+        check.op(Opcodes.LCMP);
+        check.branch(Opcodes.IFGE, outOfBounds);
+        check.opByte(Opcodes.LLOAD, 1);
+        check.op(Opcodes.L2I);
+        check.op(Opcodes.IRETURN);
+
+        check.bind(outOfBounds, locals, List.of());
+        startMessage(check);
+        loadConstant(check, classFile.string("Index "));
+        check.opShort(Opcodes.INVOKEVIRTUAL, append);
+        check.opByte(Opcodes.LLOAD, 1);
+        check.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(STRING_BUILDER, "append", "(J)Ljava/lang/StringBuilder;"));
+        loadConstant(check, classFile.string(" out of bounds for length "));
+        check.opShort(Opcodes.INVOKEVIRTUAL, append);
+        check.opByte(Opcodes.ALOAD, 0);
+        check.op(Opcodes.ARRAYLENGTH);
+        check.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(STRING_BUILDER, "append", "(I)Ljava/lang/StringBuilder;"));
+        finishMessage(check, fail);
+        check.opByte(Opcodes.LLOAD, 1);
+        check.op(Opcodes.L2I);
+        check.op(Opcodes.IRETURN);
+        check.finish(4, 4);
+    }
+
+    // new StringBuilder().append(location)
+    private void startMessage(ClassFileWriter.Code method) {
+        method.opShort(Opcodes.NEW, classFile.classRef(STRING_BUILDER));
+        method.op(Opcodes.DUP);
+        method.opShort(Opcodes.INVOKESPECIAL, classFile.methodRef(STRING_BUILDER, "<init>", "()V"));
+        method.opByte(Opcodes.ALOAD, 3);
+        method.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(STRING_BUILDER, "append",
+                "(Ljava/lang/String;)Ljava/lang/StringBuilder;"));
+    }
+
+    // fail(builder.toString())
+    private void finishMessage(ClassFileWriter.Code method, int fail) {
+        method.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(STRING_BUILDER, "toString", "()Ljava/lang/String;"));
+        method.opShort(Opcodes.INVOKESTATIC, fail);
+    }
+
+    /**
+     * A program variable, held in a static field between chunks.
+     */
+    private record Variable(int index, boolean array) {
+        String field() {
+            return STR."v\{index}";
+        }
+
+        String type() {
+            return array ? "[J" : "J";
+        }
+    }
+
+    /**
+     * Top-level statements {@code first} (inclusive) to {@code end}
+     * (exclusive), compiled into one method, and the variables they use.
+     */
+    private record Chunk(int first, int end, List<Variable> variables) {
+    }
+
+    /**
+     * Turns a script file name into a class name: letters, digits and
+     * underscores, starting with an upper-case letter.
+     */
+    static String classNameFor(Path script) {
+        String name = script.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) && c < 128 ? c : '_');
+        }
+        if (sb.isEmpty() || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+            sb.insert(0, '_');
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path outputDirectory = Path.of(".");
+        Path jar = null;
+        Path script = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d") && i + 1 < args.length) {
+                outputDirectory = Path.of(args[++i]);
+            } else if (args[i].equals("--jar") && i + 1 < args.length) {
+                jar = Path.of(args[++i]);
+            } else {
+                script = Path.of(args[i]);
+            }
+        }
+        if (script == null) {
+            System.err.println("Usage: ScriptCompiler [-d <directory>] [--jar <file.jar>] <file>");
+            return;
+        }
+
+        String text = Files.readString(script);
+
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        if (!parser.getErrors().isEmpty()) {
+            System.exit(1);
+        }
+
+        String className = classNameFor(script);
+        byte[] classBytes;
+        try {
+            classBytes = compile(parser.getRootNode(), className, lexer.getLineIndex());
+        } catch (RuntimeError e) {
+            LineIndex lineIndex = lexer.getLineIndex();
+            int line = lineIndex.lineOf(e.getOffset()) + 1;
+            int column = lineIndex.columnOf(e.getOffset()) + 1;
+            System.err.println(STR."Compile error at line \{line}, column \{column}: \{e.getMessage()}");
+            System.exit(1);
+            return;
+        } catch (IllegalStateException e) {
+            System.err.println(STR."Compile error: \{e.getMessage()}");
+            System.exit(1);
+            return;
+        }
+
+        if (jar != null) {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+            try (OutputStream file = Files.newOutputStream(jar);
+                 JarOutputStream out = new JarOutputStream(file, manifest)) {
+                out.putNextEntry(new JarEntry(STR."\{className}.class"));
+                out.write(classBytes);
+                out.closeEntry();
+            }
+            System.out.println(STR."Wrote \{jar}");
+        } else {
+            Files.createDirectories(outputDirectory);
+            Path classFile = outputDirectory.resolve(STR."\{className}.class");
+            Files.write(classFile, classBytes);
+            System.out.println(STR."Wrote \{classFile}");
+        }
+    }
+}
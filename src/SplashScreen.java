@@ -4,13 +4,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 public class SplashScreen extends JWindow {
-    private final int duration;
     private final Timer fadeTimer;
     private float opacity = 1.0f;
+    private transient Main mainApp;
+    private transient Runnable onShown;
 
-    public SplashScreen(Main mainApp, int duration) {
-        this.duration = duration;
-
+    // The window setup calls JWindow methods a subclass could override; nothing subclasses the splash.
+    @SuppressWarnings("this-escape")
+    public SplashScreen() {
         JPanel content = getjPanel();
 
         JLabel titleLabel = new JLabel("Yup{++}", JLabel.CENTER);
@@ -37,7 +38,12 @@ public class SplashScreen extends JWindow {
                     opacity = 0.0f;
                     fadeTimer.stop();
                     dispose();
-                    mainApp.show();
+                    if (mainApp != null) {
+                        mainApp.show();
+                        if (onShown != null) {
+                            onShown.run();
+                        }
+                    }
                 }
                 repaint();
             }
@@ -64,13 +70,23 @@ public class SplashScreen extends JWindow {
 
     public void showSplash() {
         setVisible(true);
-        Timer timer = new Timer(duration, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                fadeTimer.start();
-            }
-        });
-        timer.setRepeats(false);
-        timer.start();
+    }
+
+    /**
+     * Fades the splash out and shows the editor. Called as soon as the editor
+     * has been built, rather than after a fixed delay.
+     */
+    public void dismiss(Main mainApp) {
+        dismiss(mainApp, null);
+    }
+
+    /**
+     * Like {@link #dismiss(Main)}, then runs {@code onShown} once the editor
+     * is showing.
+     */
+    public void dismiss(Main mainApp, Runnable onShown) {
+        this.mainApp = mainApp;
+        this.onShown = onShown;
+        fadeTimer.start();
     }
 }
\ No newline at end of file
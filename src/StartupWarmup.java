@@ -0,0 +1,111 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.SimpleAttributeSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exercises the lexer, parser and tree rendering on the bundled sample
+ * program, so later parses of the user's code run on loaded, already-compiled
+ * classes. The editor starts it on a low-priority thread before building its
+ * window, so it runs while the splash is up; {@code --warmup} runs it in the
+ * foreground and reports the time to first parse.
+ */
+public class StartupWarmup {
+    private static final long TIME_TO_FIRST_PARSE_TARGET_MS = 500;
+    private static final long WARMUP_BUDGET_MS = 1000;
+    private static final int MAX_ITERATIONS = 200;
+
+    private static final String FALLBACK_PROGRAM = """
+            let x = 5;
+            let a = [1, 2, 3];
+            while (x > 0) {
+                if (x != 3) {
+                    print(x * 2 + a[1]);
+                }
+                x = x - 1;
+            }
+            """;
+
+    /**
+     * Warms up on a low-priority daemon thread, so nothing waits for it and
+     * it gives way to the editor.
+     */
+    public static void startInBackground() {
+        Thread thread = new Thread(() -> warmUp(false), "startup-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Warms up on the calling thread and reports the time to first parse to
+     * stderr.
+     */
+    public static void run() {
+        warmUp(true);
+    }
+
+    private static void warmUp(boolean report) {
+        String program = loadSampleProgram();
+        long deadline = System.nanoTime() + WARMUP_BUDGET_MS * 1_000_000;
+
+        for (int i = 0; i < MAX_ITERATIONS && System.nanoTime() < deadline; i++) {
+            try {
+                AST root = parse(program);
+                render(root);
+            } catch (BadLocationException e) {
+                System.err.println(STR."Warm-up stopped: \{e.getMessage()}");
+                return;
+            }
+
+            if (i == 0 && report) {
+                reportTimeToFirstParse();
+            }
+        }
+    }
+
+    private static AST parse(String program) {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(program);
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        return parser.getRootNode();
+    }
+
+    // Same formatting and document inserts as the tree pane, against a document nothing is listening to.
+    private static void render(AST root) throws BadLocationException {
+        DefaultStyledDocument document = new DefaultStyledDocument();
+        render(root, 0, document, new SimpleAttributeSet());
+    }
+
+    private static void render(AST node, int indent, DefaultStyledDocument document, SimpleAttributeSet style)
+            throws BadLocationException {
+        document.insertString(document.getLength(), STR."\{node.formatLine(indent)}\n", style);
+        for (AST child : node.getChildren()) {
+            render(child, indent + 1, document, style);
+        }
+    }
+
+    static String loadSampleProgram() {
+        try (InputStream in = StartupWarmup.class.getResourceAsStream("/sampleCode")) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            System.err.println(STR."Could not read bundled sample program: \{e.getMessage()}");
+        }
+        return FALLBACK_PROGRAM;
+    }
+
+    private static void reportTimeToFirstParse() {
+        long elapsed = ManagementFactory.getRuntimeMXBean().getUptime();
+        String status = elapsed <= TIME_TO_FIRST_PARSE_TARGET_MS ? "within" : "over";
+        System.err.println(STR."Time to first parse: \{elapsed} ms (\{status} \{TIME_TO_FIRST_PARSE_TARGET_MS} ms target)");
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable parse-tree node in an {@link AstSnapshot}. A node does not
+ * know its absolute offset: it stores its start relative to the previous
+ * sibling's start (or the parent's start for a first child) and its length.
+ * Text inserted earlier in the file therefore leaves it unchanged, and
+ * snapshots of successive edits share every subtree the edit did not touch.
+ *
+ * <p>Long child lists are split into chunks at boundaries chosen from the
+ * children's content, so inserting a statement only replaces the chunks
+ * around it. Chunks are internal; {@link #getChildren()} hides them.
+ *
+ * <p>Nodes are compared by identity: within one history, equal identity
+ * means an unchanged subtree.
+ */
+public final class SyntaxNode {
+    private final String type;
+    private final String value;
+    private final int startDelta;
+    private final int length;
+    private final SyntaxNode[] children;
+    private final int childCount;
+    private final int treeSize;
+    private final int contentHash;
+
+    SyntaxNode(String type, String value, int startDelta, int length, SyntaxNode[] children, int contentHash) {
+        this.type = type;
+        this.value = value;
+        this.startDelta = startDelta;
+        this.length = length;
+        this.children = children;
+        this.contentHash = contentHash;
+
+        int count = 0;
+        int size = 1;
+        for (SyntaxNode child : children) {
+            count += child.isChunk() ? child.childCount : 1;
+            size += child.treeSize;
+        }
+        this.childCount = count;
+        this.treeSize = size;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public List<SyntaxNode> getChildren() {
+        List<SyntaxNode> result = new ArrayList<>(childCount);
+        addChildren(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    private void addChildren(List<SyntaxNode> result) {
+        for (SyntaxNode child : children) {
+            if (child.isChunk()) {
+                child.addChildren(result);
+            } else {
+                result.add(child);
+            }
+        }
+    }
+
+    boolean isChunk() {
+        return type == null;
+    }
+
+    int getStartDelta() {
+        return startDelta;
+    }
+
+    SyntaxNode[] getRawChildren() {
+        return children;
+    }
+
+    /**
+     * Number of nodes in this subtree, chunks included, counting a shared
+     * subtree once for each place it appears.
+     */
+    int getTreeSize() {
+        return treeSize;
+    }
+
+    int getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Rebuilds a mutable {@link AST} with absolute offsets, for code that
+     * works on the parser's trees.
+     */
+    public AST toAst(int start, Main main) {
+        AST ast = value == null
+                ? new AST(type, start, start + length, main)
+                : new AST(type, value, start, start + length, main);
+        addAstChildren(ast, start, main);
+        return ast;
+    }
+
+    private void addAstChildren(AST parent, int start, Main main) {
+        int previousStart = start;
+        for (SyntaxNode child : children) {
+            int childStart = previousStart + child.startDelta;
+            if (child.isChunk()) {
+                child.addAstChildren(parent, childStart, main);
+            } else {
+                parent.addChild(child.toAst(childStart, main));
+            }
+            previousStart = childStart;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return value == null ? type : STR."\{type} (\{value})";
+    }
+}
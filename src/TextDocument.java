@@ -0,0 +1,70 @@
+/**
+ * An open editor document held by the language server. Edits are applied in
+ * place so clients only have to send the ranges that changed.
+ */
+public class TextDocument {
+    private final String uri;
+    private final StringBuilder text;
+    private LineIndex lineIndex;
+    private int version;
+
+    public TextDocument(String uri, String text, int version) {
+        this.uri = uri;
+        this.text = new StringBuilder(text);
+        this.lineIndex = LineIndex.of(text);
+        this.version = version;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Replaces the text between two (line, character) positions. Positions
+     * past the end of a line or of the document are clamped, as the protocol
+     * requires.
+     */
+    public synchronized void applyEdit(int startLine, int startCharacter, int endLine, int endCharacter,
+                                       String replacement, int newVersion) {
+        int start = offsetAt(startLine, startCharacter);
+        int end = Math.max(start, offsetAt(endLine, endCharacter));
+        text.replace(start, end, replacement);
+        lineIndex.applyEdit(start, end - start, replacement);
+        version = newVersion;
+    }
+
+    public synchronized void replaceAll(String replacement, int newVersion) {
+        text.setLength(0);
+        text.append(replacement);
+        lineIndex = LineIndex.of(replacement);
+        version = newVersion;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(version, text.toString());
+    }
+
+    private int offsetAt(int line, int character) {
+        if (line < 0) {
+            return 0;
+        }
+        if (line >= lineIndex.getLineCount()) {
+            return text.length();
+        }
+        character = Math.max(0, character);
+
+        int lineStart = lineIndex.lineStart(line);
+        int lineEnd = line + 1 < lineIndex.getLineCount() ? lineIndex.lineStart(line + 1) - 1 : text.length();
+        return Math.min(lineStart + character, lineEnd);
+    }
+
+    /**
+     * An immutable copy of the document text at one version.
+     */
+    public record Snapshot(int version, String text) {
+    }
+}
@@ -1,4 +1,9 @@
-public record Token(TokenType type, String value, int line, int column) {
+/**
+ * A lexed token. {@code start} and {@code end} are character offsets into the
+ * source, end exclusive; use the lexer's {@link LineIndex} to turn them into
+ * lines and columns.
+ */
+public record Token(TokenType type, String value, int start, int end) {
 
     @Override
     public String toString() {
@@ -12,6 +17,8 @@ enum TokenType {
     ELSE,           // else
     WHILE,          // while
     PRINT,          // print
+    FN,             // fn
+    RETURN,         // return
     IDENTIFIER,     // variable names
     NUMBER,         // numeric literals
 
@@ -34,6 +41,7 @@ enum TokenType {
     LEFT_BRACE,     // {
     RIGHT_BRACE,    // }
     SEMICOLON,      // ;
+    COMMA,          // ,
     LEFT_BRACKET,   // [
     RIGHT_BRACKET,  // ]
 
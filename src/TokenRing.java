@@ -0,0 +1,157 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring of token batches with exactly one producer (a
+ * {@link Lexer} on its own thread) and one consumer (the {@link Parser}).
+ * Tokens travel in batches so the two threads touch the shared counters once
+ * per batch rather than once per token. The producer waits while the ring is
+ * full and the consumer while it is empty, so neither runs far ahead of the
+ * other and memory stays bounded.
+ */
+public class TokenRing {
+    // Both sides spin briefly before parking, since the other side usually catches up within microseconds.
+    private static final int SPINS = 200;
+    private static final long WAIT_NANOS = 20_000;
+
+    private final Token[][] slots;
+    private final int mask;
+    private final int batchSize;
+
+    // Next slot to read, written only by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, written only by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+    private volatile boolean abandoned = false;
+
+    // Each side's last view of the other's counter, so it only re-reads it when the ring looks full or empty.
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    public TokenRing(int capacity, int batchSize) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException(STR."Capacity and batch size must be positive: \{capacity}, \{batchSize}");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Token[size][];
+        mask = size - 1;
+        this.batchSize = batchSize;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * The number of tokens the producer should gather before each
+     * {@link #put}.
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Appends a batch, waiting for the consumer while the ring is full.
+     * Producer thread only.
+     *
+     * @throws CancellationException if the consumer has abandoned the ring
+     */
+    public void put(Token[] batch) {
+        long t = tail.getPlain();
+        int spins = 0;
+        while (t - cachedHead >= slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= slots.length) {
+                if (abandoned) {
+                    throw new CancellationException("Token consumer stopped");
+                }
+                spins = backOff(spins);
+            }
+        }
+
+        slots[(int) t & mask] = batch;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Marks the end of input. Producer thread only, after its last
+     * {@link #put}.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Ends the input with a failure that {@link #take} rethrows to the
+     * consumer. Producer thread only.
+     */
+    public void fail(Throwable cause) {
+        failure = cause;
+        closed = true;
+    }
+
+    /**
+     * Returns the next batch, waiting while the ring is empty, or null once
+     * the producer has closed the ring and every batch has been taken.
+     * Consumer thread only.
+     *
+     * @throws IllegalStateException if the producer failed
+     */
+    public Token[] take() {
+        long h = head.getPlain();
+        int spins = 0;
+        while (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h != cachedTail) {
+                break;
+            }
+            if (closed) {
+                // Everything put before close() is visible now, so one more look settles it.
+                cachedTail = tail.get();
+                if (h == cachedTail) {
+                    throwIfFailed();
+                    return null;
+                }
+                break;
+            }
+            spins = backOff(spins);
+        }
+        throwIfFailed();
+
+        int index = (int) h & mask;
+        Token[] batch = slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        return batch;
+    }
+
+    /**
+     * Tells the producer to stop because no more batches will be taken, such
+     * as when the consumer failed. Consumer thread only.
+     */
+    public void abandon() {
+        abandoned = true;
+    }
+
+    private void throwIfFailed() {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IllegalStateException(STR."Lexer failed: \{cause.getMessage()}", cause);
+        }
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+            return spins + 1;
+        }
+        LockSupport.parkNanos(WAIT_NANOS);
+        return spins;
+    }
+}
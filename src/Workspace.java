@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A directory of scripts analyzed together. All documents share one
+ * {@link Interner}, files are lexed and parsed concurrently on a bounded
+ * pool, and {@link #refresh()} only re-analyzes files whose modification
+ * stamp changed since the last pass. Only {@value #SCRIPT_EXTENSION} files
+ * outside hidden directories are scripts; files that cannot be read as UTF-8
+ * are skipped with a warning.
+ */
+public class Workspace implements AutoCloseable {
+    private static final int WORKER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int WORKER_QUEUE_CAPACITY = 256;
+    public static final String SCRIPT_EXTENSION = ".yup";
+
+    private final Path root;
+    private final Interner interner = new Interner();
+    private final Map<Path, Document> documents = new ConcurrentHashMap<>();
+    // How many documents use each interned name, so names can leave the interner with their last file.
+    private final Map<String, Integer> nameUses = new HashMap<>();
+    private final ThreadPoolExecutor workers;
+
+    public Workspace(Path root) {
+        this.root = root;
+        this.workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Rescans the workspace directory, analyzing new and modified files and
+     * dropping deleted ones. Returns the number of files that were analyzed.
+     */
+    public int refresh() throws IOException {
+        List<Path> files = findScripts();
+        Set<Path> present = new HashSet<>();
+        Map<Path, Future<Document>> pending = new HashMap<>();
+
+        for (Path file : files) {
+            Stamp stamp;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                stamp = new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (IOException e) {
+                skip(file, e);
+                continue;
+            }
+            present.add(file);
+
+            Document existing = documents.get(file);
+            if (existing != null && existing.stamp().equals(stamp)) {
+                continue;
+            }
+            pending.put(file, workers.submit(() -> analyze(file, stamp)));
+        }
+
+        // Every analysis finishes before any name is released, so no worker can be interning a name while its
+        // last use is dropped and end up holding a copy the interner has forgotten.
+        Map<Path, Document> analyzed = new HashMap<>();
+        List<Path> failed = new ArrayList<>();
+        IOException failure = null;
+        for (Map.Entry<Path, Future<Document>> entry : pending.entrySet()) {
+            try {
+                analyzed.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                for (Future<Document> future : pending.values()) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while analyzing workspace", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    // Unreadable or not UTF-8: leave it out rather than fail the whole workspace.
+                    skip(entry.getKey(), cause);
+                } else if (failure == null) {
+                    failure = new IOException(STR."Failed to analyze workspace: \{e.getCause().getMessage()}",
+                            e.getCause());
+                }
+                failed.add(entry.getKey());
+            }
+        }
+
+        // New documents claim their names before old ones let go, so a name that moves between files stays put.
+        for (Document document : analyzed.values()) {
+            for (String name : document.names()) {
+                nameUses.merge(name, 1, Integer::sum);
+            }
+        }
+        List<Document> replaced = new ArrayList<>();
+        for (Map.Entry<Path, Document> entry : analyzed.entrySet()) {
+            replaced.add(documents.put(entry.getKey(), entry.getValue()));
+        }
+        for (Path file : failed) {
+            replaced.add(documents.remove(file));
+        }
+        for (Path file : List.copyOf(documents.keySet())) {
+            if (!present.contains(file)) {
+                replaced.add(documents.remove(file));
+            }
+        }
+        for (Document document : replaced) {
+            release(document);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return analyzed.size();
+    }
+
+    private List<Path> findScripts() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                return directory.equals(root) || !isHidden(directory) ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && !isHidden(file)
+                        && file.getFileName().toString().endsWith(SCRIPT_EXTENSION)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                skip(file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private Document analyze(Path file, Stamp stamp) throws IOException {
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+
+        Lexer lexer = new Lexer(interner);
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+
+        Set<String> names = new HashSet<>();
+        for (Token token : lexer.getTokens()) {
+            if (token.type() != TokenType.NUMBER) {
+                names.add(token.value());
+            }
+        }
+
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+
+        return new Document(file, stamp, parser.getRootNode(), List.copyOf(parser.getParseErrors()),
+                lexer.getLineIndex(), Set.copyOf(names));
+    }
+
+    /**
+     * Drops a document's claim on its interned names, removing the ones no
+     * other document uses.
+     */
+    private void release(Document document) {
+        if (document == null) {
+            return;
+        }
+        for (String name : document.names()) {
+            if (nameUses.merge(name, -1, Integer::sum) == 0) {
+                nameUses.remove(name);
+                interner.remove(name);
+            }
+        }
+    }
+
+    private static void skip(Path file, IOException e) {
+        System.err.println(STR."Skipping \{file}: \{e}");
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Document getDocument(Path file) {
+        return documents.get(file);
+    }
+
+    public Collection<Document> getDocuments() {
+        return documents.values();
+    }
+
+    public Interner getInterner() {
+        return interner;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Modification time and size of a file when it was last analyzed.
+     */
+    public record Stamp(long modifiedMillis, long size) {
+    }
+
+    /**
+     * The parse tree and errors of one file at the stamp it was read at, and
+     * the interned names its tokens use.
+     */
+    public record Document(Path path, Stamp stamp, AST root, List<ParseError> errors, LineIndex lineIndex,
+                           Set<String> names) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Workspace <directory>");
+            return;
+        }
+
+        try (Workspace workspace = new Workspace(Path.of(args[0]))) {
+            long start = System.nanoTime();
+            int analyzed = workspace.refresh();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+            int errorCount = 0;
+            for (Document document : workspace.getDocuments()) {
+                for (ParseError error : document.errors()) {
+                    int line = document.lineIndex().lineOf(error.start()) + 1;
+                    int column = document.lineIndex().columnOf(error.start()) + 1;
+                    System.out.println(STR."\{document.path()}:\{line}:\{column}: \{error.message()}");
+                    errorCount++;
+                }
+            }
+
+            System.out.println(STR."Analyzed \{analyzed} files in \{elapsed} ms, \{errorCount} errors, \{workspace.getInterner().size()} interned names");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads back what {@link AstExporter} writes, in both formats, and checks it
+ * describes the parsed tree node for node. The program is larger than the
+ * export buffer and nested deeper than its initial stack.
+ */
+public class AstExporterTest {
+
+    public static void main(String[] args) {
+        Check.test("JSON export matches the tree", () -> {
+            String text = program();
+            AST root = parse(text);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AstExporter.writeJson(root, out);
+            Check.equal(describe(root), Json.parse(out.toString(StandardCharsets.UTF_8)), "exported tree");
+        });
+        Check.test("JSON export escapes control characters and writes any offset", () -> {
+            AST root = new AST("Program", Integer.MIN_VALUE, Integer.MAX_VALUE, null);
+            root.addChild(new AST("Identifier", "tab\there\u0001\u001f\"quoted\"\\", -1, 0, null));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AstExporter.writeJson(root, out);
+            String json = out.toString(StandardCharsets.UTF_8);
+            Check.equal(describe(root), Json.parse(json), "exported tree");
+            Check.isTrue(json.contains("\\u0001\\u001f"), "control characters escaped");
+        });
+        Check.test("binary export matches the tree", () -> {
+            String text = program();
+            AST root = parse(text);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AstExporter.writeBinary(root, text, out);
+            Check.isTrue(out.size() < text.length() * 2, STR."\{out.size()} bytes for \{text.length()} characters");
+            Check.equal(describe(root), new BinaryReader(out.toByteArray(), text).read(), "exported tree");
+        });
+        Check.done();
+    }
+
+    private static String program() {
+        StringBuilder sb = new StringBuilder("let a = [1, 2, 3];\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append(STR."let v\{i} = \{i} * 2 + a[\{i % 3}];\n");
+        }
+        sb.append("let deep = ").append("(".repeat(100)).append('1').append(" + 1)".repeat(100)).append(";\n");
+        return sb.toString();
+    }
+
+    private static AST parse(String text) {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        Check.equal(List.of(), parser.getErrors(), "parse errors");
+        return parser.getRootNode();
+    }
+
+    // The tree in the shape Json.parse returns, skipping null children as the exporter does.
+    private static Map<String, Object> describe(AST node) {
+        List<Object> children = new ArrayList<>();
+        for (AST child : node.getChildren()) {
+            if (child != null) {
+                children.add(describe(child));
+            }
+        }
+        return node(node.getType(), node.getStart(), node.getEnd(), node.getValue(), children);
+    }
+
+    private static Map<String, Object> node(String type, long start, long end, String value, List<Object> children) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("type", type);
+        node.put("start", start);
+        node.put("end", end);
+        if (value != null) {
+            node.put("value", value);
+        }
+        node.put("children", children);
+        return node;
+    }
+
+    /**
+     * Decodes the binary format described on {@link AstExporter}.
+     */
+    private static final class BinaryReader {
+        private final ByteBuffer in;
+        private final String source;
+        private final List<String> kinds = new ArrayList<>();
+        private int previousStart = 0;
+
+        BinaryReader(byte[] bytes, String source) {
+            this.in = ByteBuffer.wrap(bytes);
+            this.source = source;
+        }
+
+        Map<String, Object> read() {
+            byte[] magic = new byte[5];
+            in.get(magic);
+            Check.equal("RYAK\u0001", new String(magic, StandardCharsets.US_ASCII), "header");
+            Map<String, Object> root = readNode();
+            Check.equal(0, in.remaining(), "bytes after the tree");
+            return root;
+        }
+
+        private Map<String, Object> readNode() {
+            int kind = varint();
+            if (kind == kinds.size()) {
+                kinds.add(string());
+            }
+            String type = kinds.get(kind);
+
+            int encoded = varint();
+            int start = previousStart + ((encoded >>> 1) ^ -(encoded & 1));
+            previousStart = start;
+            int end = start + varint();
+
+            String value = switch (varint()) {
+                case 0 -> null;
+                case 1 -> source.substring(start, end);
+                case 2 -> string();
+                default -> throw new AssertionError("Bad value tag");
+            };
+
+            List<Object> children = new ArrayList<>();
+            for (int i = varint(); i > 0; i--) {
+                children.add(readNode());
+            }
+            return node(type, start, end, value, children);
+        }
+
+        private String string() {
+            byte[] bytes = new byte[varint()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.List;
+
+/**
+ * Checks that the parse history stays within its capacity through undo and
+ * redo, and that successive snapshots share unchanged subtrees and still
+ * rebuild the parser's tree exactly, across index compactions and undo.
+ */
+public class AstHistoryTest {
+
+    public static void main(String[] args) {
+        Check.test("redo keeps the history within capacity", AstHistoryTest::redoCapacity);
+        Check.test("unchanged statements are shared between versions", AstHistoryTest::sharing);
+        Check.test("snapshots rebuild the parsed tree across many edits", AstHistoryTest::roundTrip);
+        Check.test("recording after undo reuses the undone version", AstHistoryTest::recordAfterUndo);
+        Check.done();
+    }
+
+    private static void redoCapacity() {
+        AstHistory history = new AstHistory(3);
+        for (int i = 0; i < 3; i++) {
+            history.record(parse(STR."let x = \{i};"));
+        }
+        Check.equal(3, history.size(), "versions after recording");
+
+        history.undo();
+        history.undo();
+        Check.isTrue(!history.canUndo(), "undo stops at the oldest version");
+        history.redo();
+        history.redo();
+        Check.equal(3, history.size(), "versions after undo and redo");
+        Check.equal(2, history.current().getVersion(), "latest version after redo");
+
+        for (int i = 3; i < 10; i++) {
+            history.record(parse(STR."let x = \{i};"));
+            history.undo();
+            history.redo();
+            Check.isTrue(history.size() <= 3, STR."versions held after record \{i}: \{history.size()}");
+        }
+    }
+
+    private static void sharing() {
+        AstHistory history = new AstHistory(10);
+        AstSnapshot first = history.record(parse(program(200, -1)));
+        AstSnapshot second = history.record(parse(program(200, 150)));
+
+        // The edit inserts a statement after v150, which is child 151. The statement after the insertion
+        // moves relative to its new previous sibling, so only it is rebuilt; the rest are shared.
+        List<SyntaxNode> before = first.getRoot().getChildren();
+        List<SyntaxNode> after = second.getRoot().getChildren();
+        Check.equal(before.size() + 1, after.size(), "statement count");
+        for (int i = 0; i <= 151; i++) {
+            Check.isTrue(before.get(i) == after.get(i), STR."statement \{i} shared");
+        }
+        Check.isTrue(before.get(152) != after.get(153), "statement after the insertion rebuilt");
+        for (int i = 153; i < before.size(); i++) {
+            Check.isTrue(before.get(i) == after.get(i + 1), STR."statement \{i} shared");
+        }
+    }
+
+    private static void roundTrip() {
+        AstHistory history = new AstHistory(5);
+        // Enough versions that the index is compacted several times along the way.
+        for (int edit = 0; edit < 300; edit++) {
+            AST tree = parse(program(100 + edit % 7, edit % 100));
+            AstSnapshot snapshot = history.record(tree);
+            Check.equal(render(tree), render(snapshot.toAst(null)), STR."tree after edit \{edit}");
+        }
+    }
+
+    private static void recordAfterUndo() {
+        int capacity = 10;
+        int edits = 300;
+        AstHistory history = new AstHistory(capacity);
+        // Enough edits that the index is compacted after the oldest version still held was built.
+        for (int edit = 0; edit < edits; edit++) {
+            history.record(parse(program(100, edit % 99)));
+        }
+        while (history.canUndo()) {
+            history.undo();
+        }
+
+        // The oldest version again with one more statement on the end.
+        AstSnapshot oldest = history.current();
+        AstSnapshot next = history.record(parse(program(101, (edits - capacity) % 99)));
+        List<SyntaxNode> before = oldest.getRoot().getChildren();
+        List<SyntaxNode> after = next.getRoot().getChildren();
+        Check.equal(before.size() + 1, after.size(), "statement count");
+        for (int i = 0; i < before.size(); i++) {
+            Check.isTrue(before.get(i) == after.get(i), STR."statement \{i} shared with the undone version");
+        }
+        Check.isTrue(!history.canRedo(), "recording discards redo");
+    }
+
+    // Statements that each depend on their position, with one changed when edited is not -1.
+    private static String program(int statements, int edited) {
+        StringBuilder sb = new StringBuilder("let a = [1, 2, 3];\n");
+        for (int i = 0; i < statements; i++) {
+            sb.append(STR."let v\{i} = \{i} * 2 + a[\{i % 3}];\n");
+            if (i == edited) {
+                sb.append(STR."if (v\{i} > 3) { print(v\{i}); }\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static AST parse(String text) {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(text);
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        Check.equal(List.of(), parser.getErrors(), "parse errors");
+        return parser.getRootNode();
+    }
+
+    private static String render(AST node) {
+        StringBuilder sb = new StringBuilder();
+        render(node, 0, sb);
+        return sb.toString();
+    }
+
+    private static void render(AST node, int indent, StringBuilder sb) {
+        sb.append(node.formatLine(indent)).append(' ').append(node.getStart()).append('-').append(node.getEnd())
+                .append('\n');
+        for (AST child : node.getChildren()) {
+            if (child != null) {
+                render(child, indent + 1, sb);
+            }
+        }
+    }
+}
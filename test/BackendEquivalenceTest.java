@@ -0,0 +1,211 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the same programs through the interpreter, the IR backend and the
+ * compiled class and checks they print the same output and fail with the
+ * same runtime error at the same place. Compiled programs exit the JVM on
+ * an error, so they run in a child process.
+ */
+public class BackendEquivalenceTest {
+    private static final int GENERATED_PROGRAMS = 40;
+    private static final long SEED = 32;
+    private static final long RUN_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) {
+        Check.test("the sample program", () -> agree(Files.readString(Path.of("src", "sampleCode"))));
+        Check.test("the target is checked before the value is computed", () -> agree("""
+                let v0 = 2;
+                let a1 = [1*1+v0*v0, v0];
+                a1[v0] = a1[4];
+                """));
+        Check.test("division by zero inside a loop", () -> agree("""
+                let i = 5;
+                while (i >= 0) {
+                    print(100 / i);
+                    i = i - 1;
+                }
+                """));
+        Check.test("loop-invariant code and strength reduction", () -> agree("""
+                let a = [1, 2, 3, 4];
+                let n = 7;
+                let i = 0;
+                let sum = 0;
+                while (i < 1000) {
+                    sum = sum + a[i / 250] * (n * 8) + i * 4;
+                    i = i + 1;
+                }
+                print(sum);
+                print(a);
+                """));
+        Check.test("generated programs", () -> {
+            Random random = new Random(SEED);
+            for (int i = 0; i < GENERATED_PROGRAMS; i++) {
+                agree(new Generator(random).program());
+            }
+        });
+        Check.done();
+    }
+
+    private static void agree(String program) throws Exception {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(program);
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        Check.equal(List.of(), parser.getErrors(), "parse errors");
+        AST tree = parser.getRootNode();
+        LineIndex lineIndex = lexer.getLineIndex();
+
+        String interpreted = runInProcess(lineIndex, out -> new Interpreter(out).run(tree));
+        String lowered = runInProcess(lineIndex, out -> {
+            IrFunction function = IrBuilder.build(tree);
+            IrOptimizer.optimize(function);
+            IrBackend.lower(function).run(out);
+        });
+        String compiled = runCompiled(ScriptCompiler.compile(tree, "Equivalence", lineIndex));
+
+        Check.equal(interpreted, lowered, STR."IR backend output for\n\{program}");
+        Check.equal(interpreted, compiled, STR."compiled output for\n\{program}");
+    }
+
+    private interface Backend {
+        void run(PrintStream out);
+    }
+
+    private static String runInProcess(LineIndex lineIndex, Backend backend) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        try {
+            backend.run(out);
+        } catch (RuntimeError e) {
+            int line = lineIndex.lineOf(e.getOffset()) + 1;
+            int column = lineIndex.columnOf(e.getOffset()) + 1;
+            out.println(STR."Runtime error at line \{line}, column \{column}: \{e.getMessage()}");
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String runCompiled(byte[] classBytes) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("equivalence");
+        try {
+            Files.write(directory.resolve("Equivalence.class"), classBytes);
+            String java = ProcessHandle.current().info().command().orElse("java");
+            Process process = new ProcessBuilder(java, "-cp", directory.toString(), "Equivalence")
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new AssertionError("Compiled program timed out");
+            }
+            return output;
+        } finally {
+            try (Stream<Path> walk = Files.walk(directory)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes small random programs over a few numbers and arrays: assignments,
+     * array stores, prints, ifs and counted loops. Computed indexes and
+     * divisors are left to chance, so some programs end in a runtime error
+     * part way.
+     */
+    private static final class Generator {
+        private static final int NUMBERS = 3;
+        private static final int ARRAYS = 2;
+        private static final int STATEMENTS = 10;
+        private static final int MAX_DEPTH = 3;
+        // Division is rarer so that most programs run to the end.
+        private static final List<String> OPERATORS = List.of("+", "-", "*", "+", "-", "*", "/");
+
+        private final Random random;
+        private final StringBuilder sb = new StringBuilder();
+        private int loops = 0;
+
+        Generator(Random random) {
+            this.random = random;
+        }
+
+        String program() {
+            for (int i = 0; i < NUMBERS; i++) {
+                sb.append(STR."let v\{i} = \{random.nextInt(10)};\n");
+            }
+            for (int i = 0; i < ARRAYS; i++) {
+                List<String> elements = new ArrayList<>();
+                for (int j = 3 + random.nextInt(3); j > 0; j--) {
+                    elements.add(expression(MAX_DEPTH));
+                }
+                sb.append(STR."let a\{i} = [\{String.join(", ", elements)}];\n");
+            }
+            for (int i = 0; i < STATEMENTS; i++) {
+                statement("", true);
+            }
+            return sb.toString();
+        }
+
+        private void statement(String indent, boolean topLevel) {
+            switch (random.nextInt(topLevel ? 6 : 4)) {
+                case 0 -> sb.append(STR."\{indent}v\{random.nextInt(NUMBERS)} = \{expression(0)};\n");
+                case 1 -> sb.append(STR."\{indent}\{element(0)} = \{expression(0)};\n");
+                case 2 -> sb.append(STR."\{indent}print(\{expression(0)});\n");
+                case 3 -> sb.append(STR."\{indent}print(a\{random.nextInt(ARRAYS)});\n");
+                case 4 -> {
+                    sb.append(STR."if (\{expression(1)} \{comparison()} \{expression(1)}) {\n");
+                    block();
+                    sb.append("}\n");
+                }
+                default -> {
+                    // Loop counters are never assigned in the body, so every loop ends.
+                    String counter = STR."w\{loops++}";
+                    sb.append(STR."let \{counter} = 0;\nwhile (\{counter} < \{1 + random.nextInt(5)}) {\n");
+                    block();
+                    sb.append(STR."    \{counter} = \{counter} + 1;\n}\n");
+                }
+            }
+        }
+
+        private void block() {
+            for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                statement("    ", false);
+            }
+        }
+
+        private String expression(int depth) {
+            int choice = random.nextInt(depth >= MAX_DEPTH ? 2 : 5);
+            return switch (choice) {
+                case 0 -> Integer.toString(random.nextInt(10));
+                case 1 -> STR."v\{random.nextInt(NUMBERS)}";
+                case 2 -> element(depth + 1);
+                default -> {
+                    String operator = OPERATORS.get(random.nextInt(OPERATORS.size()));
+                    yield STR."(\{expression(depth + 1)} \{operator} \{expression(depth + 1)})";
+                }
+            };
+        }
+
+        private String element(int depth) {
+            String index = random.nextInt(8) == 0 ? expression(depth + 1) : Integer.toString(random.nextInt(3));
+            return STR."a\{random.nextInt(ARRAYS)}[\{index}]";
+        }
+
+        private String comparison() {
+            return List.of("<", ">", "<=", ">=", "==", "!=").get(random.nextInt(6));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.Objects;
+
+/**
+ * Just enough of a test framework for the classes under test/, which run as
+ * plain main classes from scripts/run-tests.sh. Each test is a named block;
+ * a failure is reported and the rest still run, and {@link #done} exits
+ * non-zero if any failed.
+ */
+final class Check {
+    private static int passed = 0;
+    private static int failed = 0;
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+    private Check() {
+    }
+
+    static void test(String name, Body body) {
+        try {
+            body.run();
+            passed++;
+            System.out.println(STR."  ok    \{name}");
+        } catch (Throwable t) {
+            failed++;
+            System.out.println(STR."  FAIL  \{name}: \{t}");
+            t.printStackTrace(System.out);
+        }
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(STR."\{what}: expected <\{expected}> but was <\{actual}>");
+        }
+    }
+
+    static void isTrue(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    static void done() {
+        System.out.println(STR."  \{passed} passed, \{failed} failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
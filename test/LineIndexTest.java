@@ -0,0 +1,54 @@
+import java.util.Random;
+
+/**
+ * Checks that a {@link LineIndex} updated edit by edit matches one built
+ * from the edited text, including edits that remove or insert line breaks
+ * at the start and end of the text.
+ */
+public class LineIndexTest {
+    private static final int EDITS = 2000;
+    private static final long SEED = 31;
+
+    public static void main(String[] args) {
+        Check.test("edits at the ends of the text", () -> {
+            StringBuilder text = new StringBuilder("a\nb\n");
+            LineIndex index = LineIndex.of(text);
+            edit(text, index, 0, 0, "\n\n");
+            edit(text, index, text.length(), 0, "c\n");
+            edit(text, index, 0, 2, "");
+            edit(text, index, text.length() - 1, 1, "");
+            edit(text, index, 0, text.length(), "");
+            edit(text, index, 0, 0, "\n");
+        });
+        Check.test("random edits", () -> {
+            Random random = new Random(SEED);
+            StringBuilder text = new StringBuilder("let x = 1;\nlet y = 2;\n");
+            LineIndex index = LineIndex.of(text);
+            for (int i = 0; i < EDITS; i++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(text.length() - offset, 8) + 1);
+                StringBuilder inserted = new StringBuilder();
+                for (int j = random.nextInt(6); j > 0; j--) {
+                    inserted.append("ab\n".charAt(random.nextInt(3)));
+                }
+                edit(text, index, offset, removed, inserted.toString());
+            }
+        });
+        Check.done();
+    }
+
+    private static void edit(StringBuilder text, LineIndex index, int offset, int removed, String inserted) {
+        text.replace(offset, offset + removed, inserted);
+        index.applyEdit(offset, removed, inserted);
+
+        LineIndex expected = LineIndex.of(text);
+        String what = STR."after replacing \{removed} at \{offset} with \{inserted.replace("\n", "\\n")}";
+        Check.equal(expected.getLineCount(), index.getLineCount(), STR."line count \{what}");
+        for (int line = 0; line < expected.getLineCount(); line++) {
+            Check.equal(expected.lineStart(line), index.lineStart(line), STR."start of line \{line} \{what}");
+        }
+        for (int offsetInText = 0; offsetInText <= text.length(); offsetInText++) {
+            Check.equal(expected.lineOf(offsetInText), index.lineOf(offsetInText), STR."line of \{offsetInText} \{what}");
+        }
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Drives {@link LspServer} over in-memory pipes the way an editor would:
+ * opening a document, syncing incremental edits, asking for symbols and
+ * sending the malformed traffic a client bug could produce.
+ */
+public class LspServerTest {
+    private static final String URI = "file:///test.yup";
+
+    public static void main(String[] args) {
+        Check.test("incremental edits are synced and re-analyzed", LspServerTest::editSync);
+        Check.test("malformed messages get JSON-RPC errors", LspServerTest::malformedMessages);
+        Check.test("a flood of requests is answered or turned away", LspServerTest::flood);
+        Check.test("requests after shutdown are answered", LspServerTest::afterShutdown);
+        Check.done();
+    }
+
+    private static void editSync() throws Exception {
+        try (Client client = new Client()) {
+            client.initialize();
+            client.notify("textDocument/didOpen", Map.of("textDocument",
+                    Map.of("uri", URI, "version", 1L, "text", "let x = 1;\nlet y = x + 2;\n")));
+            Check.equal(0, client.diagnostics().size(), "diagnostics after open");
+
+            // Deleting the "2" leaves "let y = x + ;".
+            client.change(2, range(1, 12, 1, 13), "");
+            Check.isTrue(!client.diagnostics().isEmpty(), "diagnostics after breaking edit");
+
+            client.change(3, range(1, 12, 1, 12), "x");
+            client.change(4, range(0, 4, 0, 5), "count");
+            client.change(5, range(1, 8, 1, 9), "count");
+            Check.equal(0, client.diagnostics().size(), "diagnostics after fixing edits");
+
+            Map<String, Object> response = client.request("textDocument/documentSymbol",
+                    Map.of("textDocument", Map.of("uri", URI)));
+            List<?> symbols = (List<?>) response.get("result");
+            Check.equal(2, symbols.size(), "symbol count");
+            Check.equal("count", ((Map<?, ?>) symbols.get(0)).get("name"), "renamed symbol");
+            Check.equal("y", ((Map<?, ?>) symbols.get(1)).get("name"), "second symbol");
+        }
+    }
+
+    private static void malformedMessages() throws Exception {
+        try (Client client = new Client()) {
+            client.initialize();
+
+            client.sendRaw("{\"jsonrpc\":\"2.0\",\"id\":1,");
+            Check.equal(-32700L, client.error(null), "truncated JSON");
+
+            client.sendRaw("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"x\\");
+            Check.equal(-32700L, client.error(null), "trailing backslash");
+
+            client.sendRaw("[1, 2]");
+            Check.equal(-32600L, client.error(null), "non-object message");
+
+            client.sendRaw("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"textDocument/documentSymbol\"}");
+            Check.equal(-32602L, client.error(3L), "missing params");
+
+            client.sendRaw("{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"textDocument/documentSymbol\","
+                    + "\"params\":{\"textDocument\":{\"uri\":5}}}");
+            Check.equal(-32602L, client.error(4L), "mistyped params");
+
+            // A broken notification has nobody to answer, but must not stop the server.
+            client.sendRaw("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{}}");
+            Map<String, Object> response = client.request("textDocument/documentSymbol",
+                    Map.of("textDocument", Map.of("uri", URI)));
+            Check.equal(List.of(), response.get("result"), "symbols of an unknown document");
+        }
+    }
+
+    private static void flood() throws Exception {
+        try (Client client = new Client()) {
+            client.initialize();
+            client.notify("textDocument/didOpen", Map.of("textDocument",
+                    Map.of("uri", URI, "version", 1L, "text", "let x = 1;\n".repeat(5000))));
+
+            // Far more than the queue holds, so some are rejected; every one must still get a reply.
+            int requests = 500;
+            for (int i = 0; i < requests; i++) {
+                client.sendRaw(STR."""
+                        {"jsonrpc":"2.0","id":\{i},"method":"textDocument/documentSymbol",\
+                        "params":{"textDocument":{"uri":"\{URI}"}}}""");
+            }
+            Set<Long> unanswered = new HashSet<>();
+            for (long i = 0; i < requests; i++) {
+                unanswered.add(i);
+            }
+            while (!unanswered.isEmpty()) {
+                Map<String, Object> response = client.next();
+                if (response.get("id") instanceof Long id && unanswered.remove(id)) {
+                    Check.isTrue(response.containsKey("result")
+                            || Long.valueOf(-32802).equals(((Map<?, ?>) response.get("error")).get("code")),
+                            STR."reply to request \{id}: \{response}");
+                }
+            }
+        }
+    }
+
+    private static void afterShutdown() throws Exception {
+        try (Client client = new Client()) {
+            client.initialize();
+            Check.isTrue(client.request("shutdown", null).containsKey("result"), "shutdown answered");
+
+            Map<String, Object> response = client.request("textDocument/documentSymbol",
+                    Map.of("textDocument", Map.of("uri", URI)));
+            Check.equal(-32600L, ((Map<?, ?>) response.get("error")).get("code"), "request after shutdown");
+
+            client.notify("exit", null);
+            Check.equal(0, client.exitCode(), "exit code after shutdown");
+        }
+    }
+
+    private static Map<String, Object> range(int startLine, int startCharacter, int endLine, int endCharacter) {
+        return Map.of("start", Map.of("line", (long) startLine, "character", (long) startCharacter),
+                "end", Map.of("line", (long) endLine, "character", (long) endCharacter));
+    }
+
+    /**
+     * The editor's end of the connection. A reader thread queues everything
+     * the server sends so the test can wait for the message it expects.
+     */
+    private static final class Client implements AutoCloseable {
+        private static final long TIMEOUT_SECONDS = 10;
+        private static final long QUIET_MILLIS = 300;
+
+        private final OutputStream toServer;
+        private final BlockingQueue<Map<String, Object>> received = new LinkedBlockingQueue<>();
+        private final Thread serverThread;
+        private volatile int exitCode = -1;
+        private long nextId = 100;
+
+        Client() throws IOException {
+            PipedInputStream serverIn = new PipedInputStream(1 << 16);
+            toServer = new PipedOutputStream(serverIn);
+            PipedInputStream fromServer = new PipedInputStream(1 << 16);
+            PipedOutputStream serverOut = new PipedOutputStream(fromServer);
+
+            LspServer server = new LspServer(serverIn, serverOut);
+            serverThread = new Thread(() -> {
+                try {
+                    exitCode = server.run();
+                    serverOut.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "lsp-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            Thread reader = new Thread(() -> readAll(fromServer), "lsp-client");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void initialize() throws Exception {
+            Map<String, Object> response = request("initialize", Map.of());
+            Check.isTrue(response.get("result") instanceof Map, "initialize result");
+            notify("initialized", Map.of());
+        }
+
+        Map<String, Object> request(String method, Object params) throws Exception {
+            long id = nextId++;
+            send(message(id, method, params));
+            return await(m -> Long.valueOf(id).equals(m.get("id")));
+        }
+
+        void notify(String method, Object params) throws IOException {
+            send(message(null, method, params));
+        }
+
+        void change(int version, Map<String, Object> range, String text) throws IOException {
+            notify("textDocument/didChange", Map.of(
+                    "textDocument", Map.of("uri", URI, "version", (long) version),
+                    "contentChanges", List.of(Map.of("range", range, "text", text))));
+        }
+
+        /**
+         * Returns the last diagnostics published once the server has gone
+         * quiet. Only the current version's are published, so after the
+         * last edit that is the latest.
+         */
+        List<?> diagnostics() throws Exception {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            Map<String, Object> latest = null;
+            while (System.nanoTime() < deadline) {
+                Map<String, Object> message = received.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                if (message == null && latest != null) {
+                    return (List<?>) ((Map<?, ?>) latest.get("params")).get("diagnostics");
+                }
+                if (message != null && "textDocument/publishDiagnostics".equals(message.get("method"))) {
+                    latest = message;
+                }
+            }
+            throw new AssertionError("Timed out waiting for diagnostics");
+        }
+
+        Map<String, Object> next() throws InterruptedException {
+            return await(m -> true);
+        }
+
+        Object error(Object id) throws Exception {
+            Map<String, Object> response = await(m -> m.containsKey("error"));
+            Check.equal(id, response.get("id"), "error response id");
+            return ((Map<?, ?>) response.get("error")).get("code");
+        }
+
+        int exitCode() throws InterruptedException {
+            serverThread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            return exitCode;
+        }
+
+        void sendRaw(String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            toServer.write(STR."Content-Length: \{bytes.length}\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            toServer.write(bytes);
+            toServer.flush();
+        }
+
+        private void send(Map<String, Object> message) throws IOException {
+            sendRaw(Json.write(message));
+        }
+
+        private Map<String, Object> await(Predicate<Map<String, Object>> wanted) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (true) {
+                Map<String, Object> message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (message == null) {
+                    throw new AssertionError("Timed out waiting for the server");
+                }
+                if (wanted.test(message)) {
+                    return message;
+                }
+            }
+        }
+
+        private static Map<String, Object> message(Object id, String method, Object params) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("jsonrpc", "2.0");
+            if (id != null) {
+                message.put("id", id);
+            }
+            message.put("method", method);
+            if (params != null) {
+                message.put("params", params);
+            }
+            return message;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readAll(InputStream in) {
+            try {
+                while (true) {
+                    int length = -1;
+                    String line;
+                    while (!(line = readLine(in)).isEmpty()) {
+                        if (line.startsWith("Content-Length:")) {
+                            length = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+                        }
+                    }
+                    String body = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+                    received.add((Map<String, Object>) Json.parse(body));
+                }
+            } catch (IOException | RuntimeException e) {
+                // The server closed its end.
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    throw new IOException("Closed");
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void close() throws IOException {
+            toServer.close();
+        }
+    }
+}
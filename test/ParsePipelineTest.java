@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks the {@link TokenRing} handoff between a producer and a consumer
+ * thread, and that a pipelined parse builds the same tree and reports the
+ * same errors as lexing and parsing one after the other.
+ */
+public class ParsePipelineTest {
+    private static final int BATCHES = 100_000;
+    private static final long JOIN_MILLIS = 10_000;
+
+    public static void main(String[] args) {
+        Check.test("batches arrive complete and in order", ParsePipelineTest::ordering);
+        Check.test("a producer failure reaches the consumer", ParsePipelineTest::failure);
+        Check.test("abandoning the ring releases a waiting producer", ParsePipelineTest::abandon);
+        Check.test("a pipelined parse matches a sequential one", () -> matches(program(20_000, false)));
+        Check.test("a pipelined parse reports the same errors", () -> matches(program(20_000, true)));
+        Check.done();
+    }
+
+    private static void ordering() throws Exception {
+        TokenRing ring = new TokenRing(4, 8);
+        Thread producer = start(() -> {
+            for (int i = 0; i < BATCHES; i++) {
+                ring.put(new Token[i % 7 + 1]);
+            }
+            ring.close();
+        });
+
+        int taken = 0;
+        Token[] batch;
+        while ((batch = ring.take()) != null) {
+            Check.equal(taken % 7 + 1, batch.length, STR."length of batch \{taken}");
+            taken++;
+        }
+        Check.equal(BATCHES, taken, "batches taken");
+        join(producer);
+    }
+
+    private static void failure() throws Exception {
+        TokenRing ring = new TokenRing(4, 8);
+        Thread producer = start(() -> {
+            ring.put(new Token[1]);
+            ring.put(new Token[2]);
+            ring.fail(new IllegalArgumentException("bad input"));
+        });
+        join(producer);
+
+        // The failure ends the input at once, so batches still in the ring may never be taken.
+        int taken = 0;
+        try {
+            while (ring.take() != null) {
+                taken++;
+            }
+            throw new AssertionError("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Check.isTrue(e.getCause() instanceof IllegalArgumentException, "cause kept");
+        }
+        Check.isTrue(taken <= 2, STR."batches taken: \{taken}");
+    }
+
+    private static void abandon() throws Exception {
+        TokenRing ring = new TokenRing(2, 8);
+        AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread producer = start(() -> {
+            try {
+                while (true) {
+                    ring.put(new Token[1]);
+                }
+            } catch (CancellationException e) {
+                outcome.set(e);
+            }
+        });
+
+        ring.take();
+        ring.abandon();
+        join(producer);
+        Check.isTrue(outcome.get() instanceof CancellationException, "producer cancelled");
+    }
+
+    private static void matches(String text) {
+        Parser sequential = new Parser(null);
+        Lexer sequentialLexer = ParsePipeline.parseSequentially(text, sequential);
+        Parser pipelined = new Parser(null);
+        Lexer pipelinedLexer = ParsePipeline.parse(text, pipelined);
+
+        Check.equal(sequential.getErrors(), pipelined.getErrors(), "errors");
+        Check.equal(render(sequential.getRootNode()), render(pipelined.getRootNode()), "tree");
+        Check.equal(sequentialLexer.getLineIndex().getLineCount(), pipelinedLexer.getLineIndex().getLineCount(),
+                "line count");
+    }
+
+    // Far more tokens than the ring holds, so the lexer has to wait for the parser.
+    private static String program(int statements, boolean broken) {
+        StringBuilder sb = new StringBuilder("let a = [1, 2, 3];\n");
+        for (int i = 0; i < statements; i++) {
+            if (broken && i % 5000 == 4999) {
+                sb.append(STR."let v\{i} = (\{i} + ;\n");
+            } else {
+                sb.append(STR."let v\{i} = \{i} * 2 + a[\{i % 3}];\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String render(AST root) {
+        List<String> lines = new ArrayList<>();
+        render(root, 0, lines);
+        return String.join("\n", lines);
+    }
+
+    private static void render(AST node, int indent, List<String> lines) {
+        lines.add(STR."\{node.formatLine(indent)} \{node.getStart()}-\{node.getEnd()}");
+        for (AST child : node.getChildren()) {
+            if (child != null) {
+                render(child, indent + 1, lines);
+            }
+        }
+    }
+
+    private static Thread start(Runnable body) {
+        Thread thread = new Thread(body, "ring-producer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(Thread thread) throws InterruptedException {
+        thread.join(JOIN_MILLIS);
+        Check.isTrue(!thread.isAlive(), "producer finished");
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs programs that never finish the way the editor does, on their own
+ * thread writing to an {@link OutputRing}, and checks that interrupting the
+ * thread (the editor's stop action) ends them.
+ */
+public class ProgramStopTest {
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    public static void main(String[] args) {
+        Check.test("a busy loop stops", () -> stops("""
+                let x = 0;
+                while (x >= 0) {
+                    x = x + 1;
+                    if (x > 1000000) {
+                        x = 0;
+                    }
+                }
+                """));
+        Check.test("a printing loop stops while the console keeps up", () -> stops("""
+                let x = 0;
+                while (x >= 0) {
+                    print(x);
+                }
+                """, true));
+        Check.test("a printing loop stops while the console is full", () -> stops("""
+                let x = 0;
+                while (x >= 0) {
+                    print(x);
+                }
+                """, false));
+        Check.test("a loop inside a function stops", () -> stops("""
+                fn spin(n) {
+                    while (n >= 0) {
+                        n = n + 1;
+                    }
+                    return n;
+                }
+                print(spin(0));
+                """));
+        Check.test("the console rejects an empty scrollback", () -> {
+            try {
+                ConsoleView.create(0);
+                throw new AssertionError("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                Check.isTrue(e.getMessage().contains("0"), "message names the limit");
+            }
+        });
+        Check.test("the console narrows once its longest line is evicted", () -> {
+            ConsoleView console = ConsoleView.create(3);
+            console.append("short");
+            int narrow = console.getPreferredSize().width;
+            console.append("x".repeat(200));
+            Check.isTrue(console.getPreferredSize().width > narrow, "wider with the long line");
+            for (int i = 0; i < 3; i++) {
+                console.append("short");
+            }
+            Check.equal(narrow, console.getPreferredSize().width, "width after the long line is evicted");
+        });
+        Check.done();
+    }
+
+    private static void stops(String program) throws Exception {
+        stops(program, true);
+    }
+
+    private static void stops(String program, boolean draining) throws Exception {
+        Lexer lexer = new Lexer();
+        lexer.setDebugOutput(false);
+        lexer.updateWithString(program);
+        Parser parser = new Parser(null);
+        parser.setTokens(lexer.getTokens(), lexer.getLineIndex());
+        parser.update();
+        Check.equal(List.of(), parser.getErrors(), "parse errors");
+
+        OutputRing ring = new OutputRing(64);
+        ConsoleStream out = new ConsoleStream(ring, null);
+        List<String> outcome = new ArrayList<>();
+        Thread runner = new Thread(() -> {
+            try {
+                new Interpreter(out).run(parser.getRootNode());
+                outcome.add("finished");
+            } catch (RuntimeError e) {
+                outcome.add(e.getMessage());
+            } catch (CancellationException e) {
+                outcome.add("cancelled");
+            } finally {
+                out.close();
+            }
+        }, "program-runner");
+        runner.setDaemon(true);
+        runner.start();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < deadline) {
+            if (draining) {
+                ring.drain(line -> { }, Integer.MAX_VALUE);
+            }
+            Thread.sleep(1);
+        }
+        Check.isTrue(runner.isAlive(), "program still running before the stop");
+
+        runner.interrupt();
+        runner.join(STOP_TIMEOUT_MILLIS);
+        Check.isTrue(!runner.isAlive(), "program stopped within the timeout");
+        Check.isTrue(outcome.equals(List.of("Stopped")) || outcome.equals(List.of("cancelled")),
+                STR."stopped by the interrupt: \{outcome}");
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks which files a {@link Workspace} picks up, that a bad file does not
+ * stop the rest, and that refreshes keep the shared interner in step with
+ * the files still present.
+ */
+public class WorkspaceTest {
+
+    public static void main(String[] args) {
+        Check.test("only visible script files are analyzed", WorkspaceTest::scriptFilter);
+        Check.test("files that are not UTF-8 are skipped", WorkspaceTest::invalidUtf8);
+        Check.test("removed and edited files release their names", WorkspaceTest::internerPruning);
+        Check.test("names that move to a new file stay interned", WorkspaceTest::movedNames);
+        Check.done();
+    }
+
+    private static void scriptFilter() throws Exception {
+        Path root = Files.createTempDirectory("workspace");
+        try (Workspace workspace = new Workspace(root)) {
+            Files.writeString(root.resolve("main.yup"), "let x = 1;");
+            Files.writeString(root.resolve("notes.txt"), "not a script (");
+            Files.writeString(root.resolve(".draft.yup"), "let (");
+            Files.createDirectories(root.resolve(".git"));
+            Files.writeString(root.resolve(".git").resolve("old.yup"), "let (");
+            Files.createDirectories(root.resolve("lib"));
+            Files.writeString(root.resolve("lib").resolve("util.yup"), "let y = 2;");
+
+            Check.equal(2, workspace.refresh(), "files analyzed");
+            Check.isTrue(workspace.getDocument(root.resolve("main.yup")) != null, "main.yup analyzed");
+            Check.isTrue(workspace.getDocument(root.resolve("lib").resolve("util.yup")) != null, "lib/util.yup analyzed");
+            Check.equal(0, workspace.refresh(), "files re-analyzed when nothing changed");
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void invalidUtf8() throws Exception {
+        Path root = Files.createTempDirectory("workspace");
+        try (Workspace workspace = new Workspace(root)) {
+            Files.writeString(root.resolve("good.yup"), "let x = 1;");
+            Files.write(root.resolve("bad.yup"), new byte[]{'l', 'e', 't', ' ', (byte) 0xC3, (byte) 0x28});
+
+            Check.equal(1, workspace.refresh(), "files analyzed");
+            Check.equal(1, workspace.getDocuments().size(), "documents kept");
+            Check.isTrue(workspace.getDocument(root.resolve("bad.yup")) == null, "bad.yup left out");
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void internerPruning() throws Exception {
+        Path root = Files.createTempDirectory("workspace");
+        try (Workspace workspace = new Workspace(root)) {
+            Files.writeString(root.resolve("a.yup"), "let shared = 1; let onlyInA = 2;");
+            Files.writeString(root.resolve("b.yup"), "let shared = 3;");
+            workspace.refresh();
+            // let, =, ;, shared and onlyInA.
+            Check.equal(5, workspace.getInterner().size(), "names after the first pass");
+
+            Files.delete(root.resolve("a.yup"));
+            workspace.refresh();
+            Check.equal(4, workspace.getInterner().size(), "names after deleting a.yup");
+
+            // A different size changes the stamp even within the same millisecond.
+            Files.writeString(root.resolve("b.yup"), "let renamed = 3;");
+            workspace.refresh();
+            Check.equal(4, workspace.getInterner().size(), "names after renaming in b.yup");
+
+            Files.delete(root.resolve("b.yup"));
+            workspace.refresh();
+            Check.equal(0, workspace.getInterner().size(), "names after deleting every file");
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void movedNames() throws Exception {
+        Path root = Files.createTempDirectory("workspace");
+        int files = 200;
+        try (Workspace workspace = new Workspace(root)) {
+            for (int i = 0; i < files; i++) {
+                Files.writeString(root.resolve(STR."old\{i}.yup"), "let moved = 1;");
+            }
+            workspace.refresh();
+
+            // One refresh drops every file using these names while new files that use them are being analyzed.
+            for (int i = 0; i < files; i++) {
+                Files.delete(root.resolve(STR."old\{i}.yup"));
+                Files.writeString(root.resolve(STR."new\{i}.yup"), "let moved = 2;");
+            }
+            Check.equal(files, workspace.refresh(), "files analyzed");
+            Check.equal(4, workspace.getInterner().size(), "names after the move");
+
+            Interner interner = workspace.getInterner();
+            for (Workspace.Document document : workspace.getDocuments()) {
+                for (String name : document.names()) {
+                    Check.isTrue(interner.intern(new String(name)) == name,
+                            STR."'\{name}' in \{document.path().getFileName()} is the interned copy");
+                }
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}